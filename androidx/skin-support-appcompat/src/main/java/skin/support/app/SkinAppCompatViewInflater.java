@@ -9,8 +9,12 @@ import androidx.appcompat.widget.TintContextWrapper;
 import androidx.appcompat.widget.VectorEnabledTintResources;
 
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.View;
 
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
 import androidx.appcompat.R;
 import skin.support.content.res.SkinCompatVectorResources;
 import skin.support.utils.Slog;
@@ -38,10 +42,24 @@ import skin.support.widget.SkinCompatView;
 
 /**
  * A custom view inflater that creates skinnable views and wraps contexts for theme application.
- * Implements {@link SkinLayoutInflater} for view creation and {@link SkinWrapper} for context wrapping.
+ * Implements {@link SkinTagLayoutInflater} for view creation and {@link SkinWrapper} for context wrapping.
  */
-public final class SkinAppCompatViewInflater implements SkinLayoutInflater, SkinWrapper {
+public final class SkinAppCompatViewInflater implements SkinTagLayoutInflater, SkinWrapper {
     private static final String LOG_TAG = "SkinAppCompatViewInflater";
+    private static final String[] SUPPORTED_TAGS = {
+            "View", "LinearLayout", "RelativeLayout", "FrameLayout", "TextView", "ImageView",
+            "Button", "EditText", "Spinner", "ImageButton", "CheckBox", "RadioButton", "RadioGroup",
+            "CheckedTextView", "AutoCompleteTextView", "MultiAutoCompleteTextView", "RatingBar",
+            "SeekBar", "ProgressBar", "ScrollView", "androidx.appcompat.widget.Toolbar"
+    };
+    private static final String ATTR_THEME = "theme";
+
+    /**
+     * Wrapped contexts handed out so far, per base context and theme resource id (0 for none).
+     * Values are weak because a themed context strongly references its base context.
+     */
+    private final WeakHashMap<Context, SparseArray<WeakReference<Context>>> mWrappedContexts =
+            new WeakHashMap<>();
 
     /**
      * Constructs a new {@link SkinAppCompatViewInflater} and initializes vector resources.
@@ -70,6 +88,12 @@ public final class SkinAppCompatViewInflater implements SkinLayoutInflater, Skin
         return view;
     }
 
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
+
     private View createViewFromFV(Context context, String name, AttributeSet attrs) {
         if (name.contains(".")) {
             return null;
@@ -108,47 +132,84 @@ public final class SkinAppCompatViewInflater implements SkinLayoutInflater, Skin
         return view;
     }
 
+    /**
+     * Applies the view's theme and tint wrapping to the context. Views sharing a base context and a
+     * theme share the resulting context, so inflating a large layout creates each themed context once.
+     */
     @Override
     public Context wrapContext(Context context, View parent, AttributeSet attrs) {
         boolean readAppTheme = true; /* Read read app:theme as a fallback at all times for legacy reasons */
         boolean wrapContext = VectorEnabledTintResources.shouldBeUsed(); /* Only tint wrap the context if enabled */
 
-        // We can emulate Lollipop's android:theme attribute propagating down the view hierarchy
-        // by using the parent's context
-        // We then apply the theme on the context, if specified
-        context = themifyContext(context, attrs, readAppTheme);
-        if (wrapContext) {
-            context = TintContextWrapper.wrap(context);
+        int themeId = readAppTheme && hasThemeAttribute(attrs) ? resolveThemeId(context, attrs) : 0;
+        if (themeId == 0 && !wrapContext) {
+            return context;
+        }
+        synchronized (mWrappedContexts) {
+            SparseArray<WeakReference<Context>> byTheme = mWrappedContexts.get(context);
+            if (byTheme == null) {
+                byTheme = new SparseArray<>(2);
+                mWrappedContexts.put(context, byTheme);
+            }
+            WeakReference<Context> ref = byTheme.get(themeId);
+            Context wrapped = ref != null ? ref.get() : null;
+            if (wrapped == null) {
+                // We can emulate Lollipop's android:theme attribute propagating down the view hierarchy
+                // by using the parent's context
+                // We then apply the theme on the context, if specified
+                wrapped = themifyContext(context, themeId);
+                if (wrapContext) {
+                    wrapped = TintContextWrapper.wrap(wrapped);
+                }
+                byTheme.put(themeId, new WeakReference<>(wrapped));
+            }
+            return wrapped;
         }
-        return context;
     }
 
     /**
-     * Applies the android:theme attribute to the context, if specified.
-     *
-     * @param context      The original context.
-     * @param attrs        The attribute set containing theme information.
-     * @param useAppTheme  Whether to read the app:theme attribute (for legacy support).
-     * @return The themed context, or the original context if no theme is applied.
+     * Cheap pre-check that avoids obtaining styled attributes for the vast majority of views,
+     * which neither declare a theme nor set a style that may declare one.
      */
-    @NonNull
-    private static Context themifyContext(@NonNull Context context, @NonNull AttributeSet attrs,
-                                          boolean useAppTheme) {
+    private static boolean hasThemeAttribute(@NonNull AttributeSet attrs) {
+        if (attrs.getStyleAttribute() != 0) {
+            return true;
+        }
+        for (int i = attrs.getAttributeCount() - 1; i >= 0; i--) {
+            if (ATTR_THEME.equals(attrs.getAttributeName(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int resolveThemeId(@NonNull Context context, @NonNull AttributeSet attrs) {
         TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.View, 0, 0);
         try {
-            int themeId = useAppTheme ? typedArray.getResourceId(R.styleable.View_theme, 0) : 0;
-            if (themeId != 0) {
-                if (Slog.DEBUG) {
-                    Slog.i("app:theme is deprecated; use android:theme instead");
-                }
-                if (!(context instanceof ContextThemeWrapper) ||
-                        ((ContextThemeWrapper) context).getThemeResId() != themeId) {
-                    context = new ContextThemeWrapper(context, themeId);
-                }
-            }
-            return context;
+            return typedArray.getResourceId(R.styleable.View_theme, 0);
         } finally {
             typedArray.recycle();
         }
     }
+
+    /**
+     * Applies the theme to the context, if specified.
+     *
+     * @param context The original context.
+     * @param themeId The theme resource id read from the view's attributes, or 0.
+     * @return The themed context, or the original context if no theme is applied.
+     */
+    @NonNull
+    private static Context themifyContext(@NonNull Context context, int themeId) {
+        if (themeId != 0) {
+            if (Slog.DEBUG) {
+                Slog.i("app:theme is deprecated; use android:theme instead");
+            }
+            if (!(context instanceof ContextThemeWrapper) ||
+                    ((ContextThemeWrapper) context).getThemeResId() != themeId) {
+                context = new ContextThemeWrapper(context, themeId);
+            }
+        }
+        return context;
+    }
 }
\ No newline at end of file
@@ -1,12 +1,10 @@
 package skin.support.widget;
 
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import androidx.core.view.ViewCompat;
 import android.util.AttributeSet;
 import android.view.View;
 
-import skin.support.R;
 import skin.support.content.res.SkinCompatVectorResources;
 
 /**
@@ -18,19 +16,18 @@ public class SkinCompatBackgroundHelper extends SkinCompatHelper {
 
     private int mBackgroundResId = INVALID_ID;
 
+    private int mAppliedGeneration = INVALID_GENERATION;
+    private int mAppliedResId = INVALID_ID;
+    private Drawable mAppliedDrawable;
+
     public SkinCompatBackgroundHelper(View view) {
         mView = view;
     }
 
     public void loadFromAttributes(AttributeSet attrs, int defStyleAttr) {
-        TypedArray a = mView.getContext().obtainStyledAttributes(attrs, R.styleable.SkinBackgroundHelper, defStyleAttr, 0);
-        try {
-            if (a.hasValue(R.styleable.SkinBackgroundHelper_android_background)) {
-                mBackgroundResId = a.getResourceId(
-                        R.styleable.SkinBackgroundHelper_android_background, INVALID_ID);
-            }
-        } finally {
-            a.recycle();
+        SkinCompatAttributes a = SkinCompatAttributes.obtain(mView, attrs, defStyleAttr);
+        if (a.hasValue(SkinCompatAttributes.BACKGROUND)) {
+            mBackgroundResId = a.getResourceId(SkinCompatAttributes.BACKGROUND);
         }
         applySkin();
     }
@@ -47,14 +44,29 @@ public class SkinCompatBackgroundHelper extends SkinCompatHelper {
         if (mBackgroundResId == INVALID_ID) {
             return;
         }
+        int generation = currentSkinGeneration();
+        boolean untouched = mAppliedDrawable != null && mView.getBackground() == mAppliedDrawable;
+        if (untouched && generation == mAppliedGeneration && mBackgroundResId == mAppliedResId) {
+            return;
+        }
         Drawable drawable = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mBackgroundResId);
+        mAppliedGeneration = generation;
+        mAppliedResId = mBackgroundResId;
+        if (untouched && isSameDrawable(mAppliedDrawable, drawable)) {
+            return;
+        }
         if (drawable != null) {
+            mAppliedDrawable = drawable;
             int paddingLeft = mView.getPaddingLeft();
             int paddingTop = mView.getPaddingTop();
             int paddingRight = mView.getPaddingRight();
             int paddingBottom = mView.getPaddingBottom();
             ViewCompat.setBackground(mView, drawable);
-            mView.setPadding(paddingLeft, paddingTop, paddingRight, paddingBottom);
+            // Only restore the padding if the new background changed it, to avoid another layout request.
+            if (mView.getPaddingLeft() != paddingLeft || mView.getPaddingTop() != paddingTop
+                    || mView.getPaddingRight() != paddingRight || mView.getPaddingBottom() != paddingBottom) {
+                mView.setPadding(paddingLeft, paddingTop, paddingRight, paddingBottom);
+            }
         }
     }
 }
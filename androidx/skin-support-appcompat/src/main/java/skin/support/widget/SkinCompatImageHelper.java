@@ -1,14 +1,12 @@
 package skin.support.widget;
 
 import android.content.res.ColorStateList;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.widget.ImageView;
 
 import androidx.core.widget.ImageViewCompat;
 
-import skin.support.R;
 import skin.support.content.res.SkinCompatResources;
 import skin.support.content.res.SkinCompatVectorResources;
 
@@ -22,24 +20,23 @@ public class SkinCompatImageHelper extends SkinCompatHelper {
     private int mSrcCompatResId = INVALID_ID;
     private int mSrcTintResId = INVALID_ID;
 
+    private int mAppliedGeneration = INVALID_GENERATION;
+    private int mAppliedSrcResId = INVALID_ID;
+    private int mAppliedTintResId = INVALID_ID;
+    private Drawable mAppliedDrawable;
+    private ColorStateList mAppliedTint;
+
     public SkinCompatImageHelper(ImageView imageView) {
         mView = imageView;
     }
 
     public void loadFromAttributes(AttributeSet attrs, int defStyleAttr) {
-        TypedArray a = null;
-        try {
-            a = mView.getContext().obtainStyledAttributes(attrs, R.styleable.SkinCompatImageView, defStyleAttr, 0);
-            mSrcResId = a.getResourceId(R.styleable.SkinCompatImageView_android_src, INVALID_ID);
-            mSrcCompatResId = a.getResourceId(R.styleable.SkinCompatImageView_srcCompat, INVALID_ID);
-            mSrcTintResId = a.getResourceId(R.styleable.SkinCompatImageView_tint, INVALID_ID);
-            if (mSrcTintResId == INVALID_ID) {
-                mSrcTintResId = a.getResourceId(R.styleable.SkinCompatImageView_android_tint, INVALID_ID);
-            }
-        } finally {
-            if (a != null) {
-                a.recycle();
-            }
+        SkinCompatAttributes a = SkinCompatAttributes.obtain(mView, attrs, defStyleAttr);
+        mSrcResId = a.getResourceId(SkinCompatAttributes.SRC);
+        mSrcCompatResId = a.getResourceId(SkinCompatAttributes.SRC_COMPAT);
+        mSrcTintResId = a.getResourceId(SkinCompatAttributes.TINT);
+        if (mSrcTintResId == INVALID_ID) {
+            mSrcTintResId = a.getResourceId(SkinCompatAttributes.ANDROID_TINT);
         }
         applySkin();
     }
@@ -53,24 +50,33 @@ public class SkinCompatImageHelper extends SkinCompatHelper {
     @Override
     public void applySkin() {
         mSrcCompatResId = checkResourceId(mSrcCompatResId);
-        if (mSrcCompatResId != INVALID_ID) {
-            Drawable drawable = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mSrcCompatResId);
-            if (drawable != null) {
+        mSrcResId = checkResourceId(mSrcResId);
+        mSrcTintResId = checkResourceId(mSrcTintResId);
+        int srcResId = mSrcCompatResId != INVALID_ID ? mSrcCompatResId : mSrcResId;
+        int generation = currentSkinGeneration();
+        boolean drawableUntouched = mAppliedDrawable != null && mView.getDrawable() == mAppliedDrawable;
+        boolean tintUntouched = mAppliedTint != null
+                && ImageViewCompat.getImageTintList(mView) == mAppliedTint;
+        boolean sameGeneration = generation == mAppliedGeneration;
+        mAppliedGeneration = generation;
+
+        if (srcResId != INVALID_ID
+                && !(drawableUntouched && sameGeneration && srcResId == mAppliedSrcResId)) {
+            Drawable drawable = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), srcResId);
+            if (drawable != null && !(drawableUntouched && isSameDrawable(mAppliedDrawable, drawable))) {
                 mView.setImageDrawable(drawable);
+                mAppliedDrawable = drawable;
             }
-        } else {
-            mSrcResId = checkResourceId(mSrcResId);
-            if (mSrcResId != INVALID_ID) {
-                Drawable drawable = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mSrcResId);
-                if (drawable != null) {
-                    mView.setImageDrawable(drawable);
-                }
-            }
+            mAppliedSrcResId = srcResId;
         }
-        mSrcTintResId = checkResourceId(mSrcTintResId);
-        if (mSrcTintResId != INVALID_ID) {
+        if (mSrcTintResId != INVALID_ID
+                && !(tintUntouched && sameGeneration && mSrcTintResId == mAppliedTintResId)) {
             ColorStateList tintList = SkinCompatResources.getColorStateList(mView.getContext(), mSrcTintResId);
-            ImageViewCompat.setImageTintList(mView, tintList);
+            if (!(tintUntouched && isSameColor(mAppliedTint, tintList))) {
+                ImageViewCompat.setImageTintList(mView, tintList);
+                mAppliedTint = tintList;
+            }
+            mAppliedTintResId = mSrcTintResId;
         }
     }
 }
@@ -2,14 +2,14 @@ package skin.support.widget;
 
 import android.content.Context;
 import android.content.res.ColorStateList;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import androidx.annotation.DrawableRes;
 import android.util.AttributeSet;
 import android.widget.TextView;
 
-import skin.support.R;
+import java.util.Arrays;
+
 import skin.support.content.res.SkinCompatResources;
 import skin.support.content.res.SkinCompatVectorResources;
 
@@ -32,6 +32,16 @@ public class SkinCompatTextHelper extends SkinCompatHelper {
     protected int mDrawableRightResId = INVALID_ID;
     protected int mDrawableTopResId = INVALID_ID;
 
+    private int mAppliedTextColorGeneration = INVALID_GENERATION;
+    private int mAppliedTextColorResId = INVALID_ID;
+    private ColorStateList mAppliedTextColor;
+    private int mAppliedTextColorHintGeneration = INVALID_GENERATION;
+    private int mAppliedTextColorHintResId = INVALID_ID;
+    private ColorStateList mAppliedTextColorHint;
+    private int mAppliedDrawablesGeneration = INVALID_GENERATION;
+    private int[] mAppliedDrawableResIds;
+    private final Drawable[] mAppliedDrawables = new Drawable[4];
+
     public SkinCompatTextHelper(TextView view) {
         mView = view;
     }
@@ -40,69 +50,70 @@ public class SkinCompatTextHelper extends SkinCompatHelper {
         final Context context = mView.getContext();
 
         // First read the TextAppearance style id
-        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SkinCompatTextHelper, defStyleAttr, 0);
-        final int ap = a.getResourceId(R.styleable.SkinCompatTextHelper_android_textAppearance, INVALID_ID);
+        SkinCompatAttributes attributes = SkinCompatAttributes.obtain(mView, attrs, defStyleAttr);
+        final int ap = attributes.getResourceId(SkinCompatAttributes.TEXT_APPEARANCE);
 
-        if (a.hasValue(R.styleable.SkinCompatTextHelper_android_drawableLeft)) {
-            mDrawableLeftResId = a.getResourceId(R.styleable.SkinCompatTextHelper_android_drawableLeft, INVALID_ID);
+        if (attributes.hasValue(SkinCompatAttributes.DRAWABLE_LEFT)) {
+            mDrawableLeftResId = attributes.getResourceId(SkinCompatAttributes.DRAWABLE_LEFT);
         }
-        if (a.hasValue(R.styleable.SkinCompatTextHelper_android_drawableTop)) {
-            mDrawableTopResId = a.getResourceId(R.styleable.SkinCompatTextHelper_android_drawableTop, INVALID_ID);
+        if (attributes.hasValue(SkinCompatAttributes.DRAWABLE_TOP)) {
+            mDrawableTopResId = attributes.getResourceId(SkinCompatAttributes.DRAWABLE_TOP);
         }
-        if (a.hasValue(R.styleable.SkinCompatTextHelper_android_drawableRight)) {
-            mDrawableRightResId = a.getResourceId(R.styleable.SkinCompatTextHelper_android_drawableRight, INVALID_ID);
+        if (attributes.hasValue(SkinCompatAttributes.DRAWABLE_RIGHT)) {
+            mDrawableRightResId = attributes.getResourceId(SkinCompatAttributes.DRAWABLE_RIGHT);
         }
-        if (a.hasValue(R.styleable.SkinCompatTextHelper_android_drawableBottom)) {
-            mDrawableBottomResId = a.getResourceId(R.styleable.SkinCompatTextHelper_android_drawableBottom, INVALID_ID);
+        if (attributes.hasValue(SkinCompatAttributes.DRAWABLE_BOTTOM)) {
+            mDrawableBottomResId = attributes.getResourceId(SkinCompatAttributes.DRAWABLE_BOTTOM);
         }
-        a.recycle();
 
         if (ap != INVALID_ID) {
-            a = context.obtainStyledAttributes(ap, R.styleable.SkinTextAppearance);
-            if (a.hasValue(R.styleable.SkinTextAppearance_android_textColor)) {
-                mTextColorResId = a.getResourceId(R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
-            }
-            if (a.hasValue(R.styleable.SkinTextAppearance_android_textColorHint)) {
-                mTextColorHintResId = a.getResourceId(
-                        R.styleable.SkinTextAppearance_android_textColorHint, INVALID_ID);
-            }
-            a.recycle();
+            readTextAppearance(SkinCompatTextAppearance.obtain(context, ap));
         }
 
         // Now read the style's values
-        a = context.obtainStyledAttributes(attrs, R.styleable.SkinTextAppearance, defStyleAttr, 0);
-        if (a.hasValue(R.styleable.SkinTextAppearance_android_textColor)) {
-            mTextColorResId = a.getResourceId(R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
+        if (attributes.hasValue(SkinCompatAttributes.TEXT_COLOR)) {
+            mTextColorResId = attributes.getResourceId(SkinCompatAttributes.TEXT_COLOR);
         }
-        if (a.hasValue(R.styleable.SkinTextAppearance_android_textColorHint)) {
-            mTextColorHintResId = a.getResourceId(
-                    R.styleable.SkinTextAppearance_android_textColorHint, INVALID_ID);
+        if (attributes.hasValue(SkinCompatAttributes.TEXT_COLOR_HINT)) {
+            mTextColorHintResId = attributes.getResourceId(SkinCompatAttributes.TEXT_COLOR_HINT);
         }
-        a.recycle();
         applySkin();
     }
 
     public void onSetTextAppearance(Context context, int resId) {
-        final TypedArray a = context.obtainStyledAttributes(resId, R.styleable.SkinTextAppearance);
-        if (a.hasValue(R.styleable.SkinTextAppearance_android_textColor)) {
-            mTextColorResId = a.getResourceId(R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
-        }
-        if (a.hasValue(R.styleable.SkinTextAppearance_android_textColorHint)) {
-            mTextColorHintResId = a.getResourceId(R.styleable.SkinTextAppearance_android_textColorHint, INVALID_ID);
-        }
-        a.recycle();
+        readTextAppearance(SkinCompatTextAppearance.obtain(context, resId));
         applyTextColorResource();
         applyTextColorHintResource();
     }
 
+    private void readTextAppearance(SkinCompatTextAppearance appearance) {
+        if (appearance.hasTextColor()) {
+            mTextColorResId = appearance.getTextColorResId();
+        }
+        if (appearance.hasTextColorHint()) {
+            mTextColorHintResId = appearance.getTextColorHintResId();
+        }
+    }
+
     private void applyTextColorHintResource() {
         mTextColorHintResId = checkResourceId(mTextColorHintResId);
         if (mTextColorHintResId != INVALID_ID) {
+            int generation = currentSkinGeneration();
+            boolean untouched = mAppliedTextColorHint != null && mView.getHintTextColors() == mAppliedTextColorHint;
+            if (untouched && generation == mAppliedTextColorHintGeneration
+                    && mTextColorHintResId == mAppliedTextColorHintResId) {
+                return;
+            }
             // TODO: HTC_U-3u OS:8.0上调用framework的getColorStateList方法，有可能抛出异常，暂时没有找到更好的解决办法.
             // issue: https://github.com/ximsfei/Android-skin-support/issues/110
             try {
                 ColorStateList color = SkinCompatResources.getColorStateList(mView.getContext(), mTextColorHintResId);
-                mView.setHintTextColor(color);
+                if (!(untouched && isSameColor(mAppliedTextColorHint, color))) {
+                    mView.setHintTextColor(color);
+                    mAppliedTextColorHint = color;
+                }
+                mAppliedTextColorHintGeneration = generation;
+                mAppliedTextColorHintResId = mTextColorHintResId;
             } catch (Exception e) {
             }
         }
@@ -111,11 +122,22 @@ public class SkinCompatTextHelper extends SkinCompatHelper {
     private void applyTextColorResource() {
         mTextColorResId = checkResourceId(mTextColorResId);
         if (mTextColorResId != INVALID_ID) {
+            int generation = currentSkinGeneration();
+            boolean untouched = mAppliedTextColor != null && mView.getTextColors() == mAppliedTextColor;
+            if (untouched && generation == mAppliedTextColorGeneration
+                    && mTextColorResId == mAppliedTextColorResId) {
+                return;
+            }
             // TODO: HTC_U-3u OS:8.0上调用framework的getColorStateList方法，有可能抛出异常，暂时没有找到更好的解决办法.
             // issue: https://github.com/ximsfei/Android-skin-support/issues/110
             try {
                 ColorStateList color = SkinCompatResources.getColorStateList(mView.getContext(), mTextColorResId);
-                mView.setTextColor(color);
+                if (!(untouched && isSameColor(mAppliedTextColor, color))) {
+                    mView.setTextColor(color);
+                    mAppliedTextColor = color;
+                }
+                mAppliedTextColorGeneration = generation;
+                mAppliedTextColorResId = mTextColorResId;
             } catch (Exception e) {
             }
         }
@@ -146,18 +168,22 @@ public class SkinCompatTextHelper extends SkinCompatHelper {
     protected void applyCompoundDrawablesResource() {
         Drawable drawableLeft = null, drawableTop = null, drawableRight = null, drawableBottom = null;
         mDrawableLeftResId = checkResourceId(mDrawableLeftResId);
+        mDrawableTopResId = checkResourceId(mDrawableTopResId);
+        mDrawableRightResId = checkResourceId(mDrawableRightResId);
+        mDrawableBottomResId = checkResourceId(mDrawableBottomResId);
+        int[] resIds = {mDrawableLeftResId, mDrawableTopResId, mDrawableRightResId, mDrawableBottomResId};
+        if (isCompoundDrawablesApplied(resIds)) {
+            return;
+        }
         if (mDrawableLeftResId != INVALID_ID) {
             drawableLeft = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableLeftResId);
         }
-        mDrawableTopResId = checkResourceId(mDrawableTopResId);
         if (mDrawableTopResId != INVALID_ID) {
             drawableTop = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableTopResId);
         }
-        mDrawableRightResId = checkResourceId(mDrawableRightResId);
         if (mDrawableRightResId != INVALID_ID) {
             drawableRight = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableRightResId);
         }
-        mDrawableBottomResId = checkResourceId(mDrawableBottomResId);
         if (mDrawableBottomResId != INVALID_ID) {
             drawableBottom = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableBottomResId);
         }
@@ -165,8 +191,51 @@ public class SkinCompatTextHelper extends SkinCompatHelper {
                 || mDrawableTopResId != INVALID_ID
                 || mDrawableRightResId != INVALID_ID
                 || mDrawableBottomResId != INVALID_ID) {
-            mView.setCompoundDrawablesWithIntrinsicBounds(drawableLeft, drawableTop, drawableRight, drawableBottom);
+            setCompoundDrawablesIfChanged(resIds, drawableLeft, drawableTop, drawableRight, drawableBottom);
+        }
+    }
+
+    /**
+     * Checks whether compound drawables for the given resource ids were already applied in the
+     * current skin generation and are still shown by the view.
+     */
+    protected boolean isCompoundDrawablesApplied(int[] resIds) {
+        return mAppliedDrawablesGeneration == currentSkinGeneration()
+                && Arrays.equals(mAppliedDrawableResIds, resIds)
+                && isCompoundDrawablesUntouched();
+    }
+
+    /**
+     * Sets the compound drawables unless they are equivalent to the ones applied last time, since
+     * {@link TextView#setCompoundDrawablesWithIntrinsicBounds} always requests a layout.
+     */
+    protected void setCompoundDrawablesIfChanged(int[] resIds, Drawable left, Drawable top,
+                                                 Drawable right, Drawable bottom) {
+        boolean untouched = mAppliedDrawableResIds != null && isCompoundDrawablesUntouched();
+        mAppliedDrawablesGeneration = currentSkinGeneration();
+        mAppliedDrawableResIds = resIds;
+        if (untouched
+                && isSameDrawable(mAppliedDrawables[0], left)
+                && isSameDrawable(mAppliedDrawables[1], top)
+                && isSameDrawable(mAppliedDrawables[2], right)
+                && isSameDrawable(mAppliedDrawables[3], bottom)) {
+            return;
+        }
+        mView.setCompoundDrawablesWithIntrinsicBounds(left, top, right, bottom);
+        mAppliedDrawables[0] = left;
+        mAppliedDrawables[1] = top;
+        mAppliedDrawables[2] = right;
+        mAppliedDrawables[3] = bottom;
+    }
+
+    private boolean isCompoundDrawablesUntouched() {
+        Drawable[] current = mView.getCompoundDrawables();
+        for (int i = 0; i < mAppliedDrawables.length; i++) {
+            if (current[i] != mAppliedDrawables[i]) {
+                return false;
+            }
         }
+        return true;
     }
 
     public int getTextColorResId() {
@@ -1,13 +1,10 @@
 package skin.support.widget;
 
-import android.content.Context;
-import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import androidx.annotation.DrawableRes;
 import android.util.AttributeSet;
 import android.widget.TextView;
 
-import skin.support.R;
 import skin.support.content.res.SkinCompatVectorResources;
 
 /**
@@ -23,19 +20,15 @@ public class SkinCompatTextHelperV17 extends SkinCompatTextHelper {
 
     @Override
     public void loadFromAttributes(AttributeSet attrs, int defStyleAttr) {
-        final Context context = mView.getContext();
-
-        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SkinCompatTextHelper,
-                defStyleAttr, 0);
-        if (a.hasValue(R.styleable.SkinCompatTextHelper_android_drawableStart)) {
-            mDrawableStartResId = a.getResourceId(R.styleable.SkinCompatTextHelper_android_drawableStart, INVALID_ID);
+        SkinCompatAttributes a = SkinCompatAttributes.obtain(mView, attrs, defStyleAttr);
+        if (a.hasValue(SkinCompatAttributes.DRAWABLE_START)) {
+            mDrawableStartResId = a.getResourceId(SkinCompatAttributes.DRAWABLE_START);
             mDrawableStartResId = SkinCompatHelper.checkResourceId(mDrawableStartResId);
         }
-        if (a.hasValue(R.styleable.SkinCompatTextHelper_android_drawableEnd)) {
-            mDrawableEndResId = a.getResourceId(R.styleable.SkinCompatTextHelper_android_drawableEnd, INVALID_ID);
+        if (a.hasValue(SkinCompatAttributes.DRAWABLE_END)) {
+            mDrawableEndResId = a.getResourceId(SkinCompatAttributes.DRAWABLE_END);
             mDrawableEndResId = SkinCompatHelper.checkResourceId(mDrawableEndResId);
         }
-        a.recycle();
         super.loadFromAttributes(attrs, defStyleAttr);
     }
 
@@ -54,18 +47,23 @@ public class SkinCompatTextHelperV17 extends SkinCompatTextHelper {
         Drawable drawableLeft = null, drawableTop = null, drawableRight = null, drawableBottom = null,
                 drawableStart = null, drawableEnd = null;
         mDrawableLeftResId = checkResourceId(mDrawableLeftResId);
+        mDrawableTopResId = checkResourceId(mDrawableTopResId);
+        mDrawableRightResId = checkResourceId(mDrawableRightResId);
+        mDrawableBottomResId = checkResourceId(mDrawableBottomResId);
+        int[] resIds = {mDrawableLeftResId, mDrawableTopResId, mDrawableRightResId, mDrawableBottomResId,
+                mDrawableStartResId, mDrawableEndResId};
+        if (isCompoundDrawablesApplied(resIds)) {
+            return;
+        }
         if (mDrawableLeftResId != INVALID_ID) {
             drawableLeft = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableLeftResId);
         }
-        mDrawableTopResId = checkResourceId(mDrawableTopResId);
         if (mDrawableTopResId != INVALID_ID) {
             drawableTop = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableTopResId);
         }
-        mDrawableRightResId = checkResourceId(mDrawableRightResId);
         if (mDrawableRightResId != INVALID_ID) {
             drawableRight = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableRightResId);
         }
-        mDrawableBottomResId = checkResourceId(mDrawableBottomResId);
         if (mDrawableBottomResId != INVALID_ID) {
             drawableBottom = SkinCompatVectorResources.getDrawableCompat(mView.getContext(), mDrawableBottomResId);
         }
@@ -87,7 +85,7 @@ public class SkinCompatTextHelperV17 extends SkinCompatTextHelper {
                 || mDrawableBottomResId != INVALID_ID
                 || mDrawableStartResId != INVALID_ID
                 || mDrawableEndResId != INVALID_ID) {
-            mView.setCompoundDrawablesWithIntrinsicBounds(drawableStart, drawableTop, drawableEnd, drawableBottom);
+            setCompoundDrawablesIfChanged(resIds, drawableStart, drawableTop, drawableEnd, drawableBottom);
         }
     }
 }
@@ -13,8 +13,6 @@ import androidx.appcompat.widget.Toolbar;
 import skin.support.content.res.SkinCompatResources;
 import skin.support.content.res.SkinCompatVectorResources;
 
-import skin.support.R;
-
 import static skin.support.widget.SkinCompatHelper.INVALID_ID;
 
 /**
@@ -55,14 +53,10 @@ public class SkinCompatToolbar extends Toolbar implements SkinCompatSupportable
         int subtitleAp = a.getResourceId(androidx.appcompat.R.styleable.Toolbar_subtitleTextAppearance, INVALID_ID);
         a.recycle();
         if (titleAp != INVALID_ID) {
-            a = context.obtainStyledAttributes(titleAp, skin.support.R.styleable.SkinTextAppearance);
-            mTitleTextColorResId = a.getResourceId(skin.support.R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
-            a.recycle();
+            mTitleTextColorResId = SkinCompatTextAppearance.obtain(context, titleAp).getTextColorResId();
         }
         if (subtitleAp != INVALID_ID) {
-            a = context.obtainStyledAttributes(subtitleAp, R.styleable.SkinTextAppearance);
-            mSubtitleTextColorResId = a.getResourceId(R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
-            a.recycle();
+            mSubtitleTextColorResId = SkinCompatTextAppearance.obtain(context, subtitleAp).getTextColorResId();
         }
         a = context.obtainStyledAttributes(attrs, androidx.appcompat.R.styleable.Toolbar, defStyleAttr, 0);
         if (a.hasValue(androidx.appcompat.R.styleable.Toolbar_titleTextColor)) {
@@ -11,7 +11,15 @@ import skin.support.widget.SkinCompatCardView;
  * Created by ximsf on 2017/3/5.
  */
 
-public class SkinCardViewInflater implements SkinLayoutInflater {
+public class SkinCardViewInflater implements SkinTagLayoutInflater {
+    private static final String[] SUPPORTED_TAGS = {"androidx.cardview.widget.CardView"};
+
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
+
     @Override
     public View createView(@NonNull Context context, final String name, @NonNull AttributeSet attrs) {
         View view = null;
@@ -0,0 +1,276 @@
+package skin.support.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code SkinTagLayoutInflater} for the views of a module annotated with
+ * {@code @SkinView}. The generated inflater maps each tag to a direct constructor call, so these
+ * views are created without {@code Class.forName} or reflective constructors, and its supported
+ * tags feed the tag dispatch table of {@code SkinCompatManager}.
+ * <p>
+ * The inflater is written once per compilation, as {@code <package>.SkinGeneratedViewInflater}.
+ * The package defaults to the package of the first annotated view in name order and can be set
+ * with the {@value #OPTION_PACKAGE} processor option; {@value #OPTION_CLASS_NAME} overrides the
+ * class name when several modules share a package.
+ */
+public class SkinViewProcessor extends AbstractProcessor {
+    static final String OPTION_PACKAGE = "skinSupport.inflaterPackage";
+    static final String OPTION_CLASS_NAME = "skinSupport.inflaterClassName";
+
+    private static final String ANNOTATION = "skin.support.annotation.SkinView";
+    private static final String VIEW = "android.view.View";
+    private static final String CONTEXT = "android.content.Context";
+    private static final String ATTRIBUTE_SET = "android.util.AttributeSet";
+    private static final String DEFAULT_CLASS_NAME = "SkinGeneratedViewInflater";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    /**
+     * Tag -> qualified name of the view class created for it, sorted for a stable output.
+     */
+    private final Map<String, String> mTags = new TreeMap<>();
+    private final Map<String, TypeElement> mTagOwners = new TreeMap<>();
+    private boolean mGenerated;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new LinkedHashSet<>();
+        options.add(OPTION_PACKAGE);
+        options.add(OPTION_CLASS_NAME);
+        return options;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = mElements.getTypeElement(ANNOTATION);
+        if (annotation != null) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                collect(element);
+            }
+        }
+        if (roundEnv.processingOver() && !mGenerated && !mTags.isEmpty() && !roundEnv.errorRaised()) {
+            mGenerated = true;
+            generate();
+        }
+        return true;
+    }
+
+    private void collect(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@SkinView can only be applied to classes");
+            return;
+        }
+        TypeElement type = (TypeElement) element;
+        if (!isValidView(type)) {
+            return;
+        }
+        List<String> tags = getDeclaredTags(type);
+        if (tags.isEmpty()) {
+            tags.add(mElements.getBinaryName(type).toString());
+        }
+        String className = type.getQualifiedName().toString();
+        for (String tag : tags) {
+            if (tag.isEmpty()) {
+                error(type, "@SkinView tags must not be empty");
+                continue;
+            }
+            TypeElement owner = mTagOwners.get(tag);
+            if (owner != null && !owner.equals(type)) {
+                error(type, "Tag \"" + tag + "\" is already handled by " + owner.getQualifiedName());
+                continue;
+            }
+            mTags.put(tag, className);
+            mTagOwners.put(tag, type);
+        }
+    }
+
+    private boolean isValidView(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)) {
+            error(type, "@SkinView classes must be public and not abstract");
+            return false;
+        }
+        Element nested = type;
+        for (Element enclosing = type.getEnclosingElement();
+             enclosing.getKind().isClass() || enclosing.getKind().isInterface();
+             enclosing = enclosing.getEnclosingElement()) {
+            if (!nested.getModifiers().contains(Modifier.STATIC) || !enclosing.getModifiers().contains(Modifier.PUBLIC)) {
+                error(type, "Nested @SkinView classes must be static and enclosed in public classes");
+                return false;
+            }
+            nested = enclosing;
+        }
+        TypeElement view = mElements.getTypeElement(VIEW);
+        if (view != null && !mTypes.isSubtype(type.asType(), view.asType())) {
+            error(type, "@SkinView classes must extend " + VIEW);
+            return false;
+        }
+        if (!hasInflationConstructor(type)) {
+            error(type, "@SkinView classes must declare a public (" + CONTEXT + ", " + ATTRIBUTE_SET + ") constructor");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasInflationConstructor(TypeElement type) {
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.CONSTRUCTOR || !member.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            List<? extends VariableElement> parameters = ((ExecutableElement) member).getParameters();
+            if (parameters.size() == 2
+                    && isType(parameters.get(0).asType(), CONTEXT)
+                    && isType(parameters.get(1).asType(), ATTRIBUTE_SET)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isType(TypeMirror mirror, String qualifiedName) {
+        return mTypes.erasure(mirror).toString().equals(qualifiedName);
+    }
+
+    private List<String> getDeclaredTags(TypeElement type) {
+        List<String> tags = new ArrayList<>();
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (!ANNOTATION.equals(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (!"value".contentEquals(entry.getKey().getSimpleName())) {
+                    continue;
+                }
+                Object value = entry.getValue().getValue();
+                if (value instanceof List) {
+                    for (Object item : (List<?>) value) {
+                        tags.add(String.valueOf(((AnnotationValue) item).getValue()));
+                    }
+                } else {
+                    tags.add(String.valueOf(value));
+                }
+            }
+        }
+        return tags;
+    }
+
+    private void generate() {
+        String packageName = processingEnv.getOptions().get(OPTION_PACKAGE);
+        if (packageName == null || packageName.isEmpty()) {
+            TypeElement first = mTagOwners.values().stream()
+                    .min((a, b) -> a.getQualifiedName().toString().compareTo(b.getQualifiedName().toString()))
+                    .orElseThrow(IllegalStateException::new);
+            packageName = mElements.getPackageOf(first).getQualifiedName().toString();
+        }
+        String className = processingEnv.getOptions().get(OPTION_CLASS_NAME);
+        if (className == null || className.isEmpty()) {
+            className = DEFAULT_CLASS_NAME;
+        }
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try {
+            JavaFileObject file = mFiler.createSourceFile(qualifiedName,
+                    mTagOwners.values().toArray(new Element[0]));
+            try (Writer writer = file.openWriter()) {
+                writer.write(render(packageName, className));
+            }
+        } catch (IOException e) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e);
+        }
+    }
+
+    private String render(String packageName, String className) {
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by ").append(SkinViewProcessor.class.getSimpleName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import android.content.Context;\n")
+                .append("import android.util.AttributeSet;\n")
+                .append("import android.view.View;\n\n")
+                .append("import skin.support.annotation.NonNull;\n")
+                .append("import skin.support.app.SkinTagLayoutInflater;\n\n")
+                .append("public final class ").append(className).append(" implements SkinTagLayoutInflater {\n")
+                .append("    private static final String[] SUPPORTED_TAGS = {\n");
+        for (String tag : mTags.keySet()) {
+            out.append("            \"").append(escape(tag)).append("\",\n");
+        }
+        out.append("    };\n\n")
+                .append("    @NonNull\n")
+                .append("    @Override\n")
+                .append("    public String[] getSupportedTags() {\n")
+                .append("        return SUPPORTED_TAGS;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public View createView(@NonNull Context context, String name, @NonNull AttributeSet attrs) {\n")
+                .append("        switch (name) {\n");
+        for (Map.Entry<String, String> entry : mTags.entrySet()) {
+            out.append("            case \"").append(escape(entry.getKey())).append("\":\n")
+                    .append("                return new ").append(entry.getValue()).append("(context, attrs);\n");
+        }
+        out.append("            default:\n")
+                .append("                return null;\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append("}\n");
+        return out.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -5,12 +5,20 @@ import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
-import skin.support.app.SkinLayoutInflater;
+import skin.support.annotation.NonNull;
+import skin.support.app.SkinTagLayoutInflater;
 import skin.support.constraint.SkinCompatConstraintLayout;
 
-public class SkinConstraintViewInflater implements SkinLayoutInflater {
+public class SkinConstraintViewInflater implements SkinTagLayoutInflater {
     private static final String TAG = "SkinConstraintView";
     private static final String CONSTRAINT_LAYOUT_CLASS = "androidx.constraintlayout.widget.ConstraintLayout";
+    private static final String[] SUPPORTED_TAGS = {CONSTRAINT_LAYOUT_CLASS};
+
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
 
     @Override
     public View createView(Context context, final String name, AttributeSet attrs) {
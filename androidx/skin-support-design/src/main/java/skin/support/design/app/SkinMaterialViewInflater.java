@@ -5,7 +5,7 @@ import androidx.annotation.NonNull;
 import android.util.AttributeSet;
 import android.view.View;
 
-import skin.support.app.SkinLayoutInflater;
+import skin.support.app.SkinTagLayoutInflater;
 import skin.support.design.widget.SkinMaterialAppBarLayout;
 import skin.support.design.widget.SkinMaterialBottomNavigationView;
 import skin.support.design.widget.SkinMaterialCollapsingToolbarLayout;
@@ -19,7 +19,25 @@ import skin.support.design.widget.SkinMaterialTextInputLayout;
 /**
  * Created by ximsfei on 2017/1/13.
  */
-public class SkinMaterialViewInflater implements SkinLayoutInflater {
+public class SkinMaterialViewInflater implements SkinTagLayoutInflater {
+    private static final String[] SUPPORTED_TAGS = {
+            "androidx.coordinatorlayout.widget.CoordinatorLayout",
+            "com.google.android.material.appbar.AppBarLayout",
+            "com.google.android.material.tabs.TabLayout",
+            "com.google.android.material.textfield.TextInputLayout",
+            "com.google.android.material.textfield.TextInputEditText",
+            "com.google.android.material.navigation.NavigationView",
+            "com.google.android.material.floatingactionbutton.FloatingActionButton",
+            "com.google.android.material.bottomnavigation.BottomNavigationView",
+            "com.google.android.material.appbar.CollapsingToolbarLayout"
+    };
+
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
+
     @Override
     public View createView(@NonNull Context context, final String name, @NonNull AttributeSet attrs) {
         if ("androidx.coordinatorlayout.widget.CoordinatorLayout".equals(name)) {
@@ -17,6 +17,7 @@ import com.google.android.material.R;
 import skin.support.widget.SkinCompatBackgroundHelper;
 import skin.support.widget.SkinCompatHelper;
 import skin.support.widget.SkinCompatSupportable;
+import skin.support.widget.SkinCompatTextAppearance;
 import skin.support.content.res.SkinCompatThemeUtils;
 
 import static skin.support.widget.SkinCompatHelper.INVALID_ID;
@@ -57,11 +58,10 @@ public class SkinMaterialNavigationView extends NavigationView implements SkinCo
         if (a.hasValue(R.styleable.NavigationView_itemTextAppearance)) {
             int textAppearance = a.getResourceId(R.styleable.NavigationView_itemTextAppearance, INVALID_ID);
             if (textAppearance != INVALID_ID) {
-                TypedArray ap = context.obtainStyledAttributes(textAppearance, skin.support.R.styleable.SkinTextAppearance);
-                if (ap.hasValue(skin.support.R.styleable.SkinTextAppearance_android_textColor)) {
-                    mTextColorResId = ap.getResourceId(skin.support.R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
+                SkinCompatTextAppearance ap = SkinCompatTextAppearance.obtain(context, textAppearance);
+                if (ap.hasTextColor()) {
+                    mTextColorResId = ap.getTextColorResId();
                 }
-                ap.recycle();
             }
         }
         if (a.hasValue(R.styleable.NavigationView_itemTextColor)) {
@@ -101,11 +101,10 @@ public class SkinMaterialNavigationView extends NavigationView implements SkinCo
     public void setItemTextAppearance(@StyleRes int resId) {
         super.setItemTextAppearance(resId);
         if (resId != INVALID_ID) {
-            TypedArray a = getContext().obtainStyledAttributes(resId, skin.support.R.styleable.SkinTextAppearance);
-            if (a.hasValue(skin.support.R.styleable.SkinTextAppearance_android_textColor)) {
-                mTextColorResId = a.getResourceId(skin.support.R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
+            SkinCompatTextAppearance ap = SkinCompatTextAppearance.obtain(getContext(), resId);
+            if (ap.hasTextColor()) {
+                mTextColorResId = ap.getTextColorResId();
             }
-            a.recycle();
             applyItemTextColorResource();
         }
     }
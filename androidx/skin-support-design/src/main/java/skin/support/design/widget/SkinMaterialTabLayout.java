@@ -9,6 +9,7 @@ import skin.support.content.res.SkinCompatResources;
 import com.google.android.material.R;
 import skin.support.widget.SkinCompatHelper;
 import skin.support.widget.SkinCompatSupportable;
+import skin.support.widget.SkinCompatTextAppearance;
 
 import static skin.support.widget.SkinCompatHelper.INVALID_ID;
 
@@ -39,12 +40,7 @@ public class SkinMaterialTabLayout extends TabLayout implements SkinCompatSuppor
         int tabTextAppearance = a.getResourceId(R.styleable.TabLayout_tabTextAppearance, R.style.TextAppearance_Design_Tab);
 
         // Text colors/sizes come from the text appearance first
-        final TypedArray ta = context.obtainStyledAttributes(tabTextAppearance, skin.support.R.styleable.SkinTextAppearance);
-        try {
-            mTabTextColorsResId = ta.getResourceId(skin.support.R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
-        } finally {
-            ta.recycle();
-        }
+        mTabTextColorsResId = SkinCompatTextAppearance.obtain(context, tabTextAppearance).getTextColorResId();
 
         if (a.hasValue(R.styleable.TabLayout_tabTextColor)) {
             // If we have an explicit text color set, use it instead
@@ -17,6 +17,7 @@ import skin.support.widget.SkinCompatBackgroundHelper;
 import skin.support.widget.SkinCompatEditText;
 import skin.support.widget.SkinCompatHelper;
 import skin.support.widget.SkinCompatSupportable;
+import skin.support.widget.SkinCompatTextAppearance;
 
 import static skin.support.widget.SkinCompatHelper.INVALID_ID;
 
@@ -62,11 +63,10 @@ public class SkinMaterialTextInputLayout extends TextInputLayout implements Skin
 
     private void loadCounterTextColorResFromAttributes(@StyleRes int resId) {
         if (resId != INVALID_ID) {
-            TypedArray counterTA = getContext().obtainStyledAttributes(resId, skin.support.R.styleable.SkinTextAppearance);
-            if (counterTA.hasValue(skin.support.R.styleable.SkinTextAppearance_android_textColor)) {
-                mCounterTextColorResId = counterTA.getResourceId(skin.support.R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
+            SkinCompatTextAppearance counterAp = SkinCompatTextAppearance.obtain(getContext(), resId);
+            if (counterAp.hasTextColor()) {
+                mCounterTextColorResId = counterAp.getTextColorResId();
             }
-            counterTA.recycle();
         }
         applyCounterTextColorResource();
     }
@@ -109,11 +109,10 @@ public class SkinMaterialTextInputLayout extends TextInputLayout implements Skin
 
     private void loadErrorTextColorResFromAttributes(@StyleRes int resId) {
         if (resId != INVALID_ID) {
-            TypedArray errorTA = getContext().obtainStyledAttributes(resId, skin.support.R.styleable.SkinTextAppearance);
-            if (errorTA.hasValue(skin.support.R.styleable.SkinTextAppearance_android_textColor)) {
-                mErrorTextColorResId = errorTA.getResourceId(skin.support.R.styleable.SkinTextAppearance_android_textColor, INVALID_ID);
+            SkinCompatTextAppearance errorAp = SkinCompatTextAppearance.obtain(getContext(), resId);
+            if (errorAp.hasTextColor()) {
+                mErrorTextColorResId = errorAp.getTextColorResId();
             }
-            errorTA.recycle();
         }
         applyErrorTextColorResource();
     }
@@ -0,0 +1,35 @@
+package skin.support.recyclerview;
+
+import android.content.Context;
+
+import skin.support.SkinCompatManager;
+import skin.support.recyclerview.app.SkinRecyclerViewApplyFilter;
+import skin.support.recyclerview.app.SkinRecyclerViewInflater;
+
+/**
+ * RecyclerView 换肤支持. 列表项只在绑定或重新显示时按需换肤，缓存池中的列表项不参与换肤.
+ */
+public class SkinRecyclerViewManager {
+    private static volatile SkinRecyclerViewManager sInstance;
+
+    public static SkinRecyclerViewManager init(Context context) {
+        if (sInstance == null) {
+            synchronized (SkinRecyclerViewManager.class) {
+                if (sInstance == null) {
+                    sInstance = new SkinRecyclerViewManager(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public static SkinRecyclerViewManager getInstance() {
+        return sInstance;
+    }
+
+    private SkinRecyclerViewManager(Context context) {
+        SkinCompatManager.init(context)
+                .addInflater(new SkinRecyclerViewInflater())
+                .addApplyFilter(new SkinRecyclerViewApplyFilter());
+    }
+}
@@ -0,0 +1,41 @@
+package skin.support.recyclerview.app;
+
+import android.view.View;
+import android.view.ViewParent;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+import skin.support.app.SkinApplyFilter;
+import skin.support.recyclerview.widget.SkinRecyclerViewHelper;
+
+/**
+ * Keeps {@link skin.support.app.SkinCompatDelegate} away from list items of RecyclerViews that
+ * have a {@link SkinRecyclerViewHelper} installed: attached items are re-skinned by their
+ * RecyclerView, and cached or pooled items are re-skinned when they are attached again.
+ */
+public class SkinRecyclerViewApplyFilter implements SkinApplyFilter {
+    @Override
+    public void onViewCreated(@Nullable View parent, @NonNull View view, int generation) {
+        if (parent instanceof RecyclerView && SkinRecyclerViewHelper.isInstalled((RecyclerView) parent)) {
+            // An item view inflated by an adapter, already skinned by its constructor.
+            SkinRecyclerViewHelper.markSkinned(view, generation);
+        }
+    }
+
+    @Override
+    public boolean shouldDeferApply(@NonNull View view) {
+        View child = view;
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            if (parent instanceof RecyclerView) {
+                return SkinRecyclerViewHelper.isInstalled((RecyclerView) parent);
+            }
+            child = (View) parent;
+            parent = parent.getParent();
+        }
+        // Detached from any window: an item sitting in the view cache or the RecycledViewPool.
+        return SkinRecyclerViewHelper.isTrackedItem(child);
+    }
+}
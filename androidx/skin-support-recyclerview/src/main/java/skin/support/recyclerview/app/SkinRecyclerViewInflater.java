@@ -0,0 +1,29 @@
+package skin.support.recyclerview.app;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+
+import skin.support.annotation.NonNull;
+import skin.support.app.SkinTagLayoutInflater;
+import skin.support.recyclerview.widget.SkinCompatRecyclerView;
+
+public class SkinRecyclerViewInflater implements SkinTagLayoutInflater {
+    private static final String RECYCLER_VIEW_CLASS = "androidx.recyclerview.widget.RecyclerView";
+    private static final String[] SUPPORTED_TAGS = {RECYCLER_VIEW_CLASS};
+
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
+
+    @Override
+    public View createView(@NonNull Context context, final String name, @NonNull AttributeSet attrs) {
+        View view = null;
+        if (RECYCLER_VIEW_CLASS.equals(name)) {
+            view = new SkinCompatRecyclerView(context, attrs);
+        }
+        return view;
+    }
+}
@@ -0,0 +1,47 @@
+package skin.support.recyclerview.widget;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import skin.support.widget.SkinCompatBackgroundHelper;
+import skin.support.widget.SkinCompatSupportable;
+
+public class SkinCompatRecyclerView extends RecyclerView implements SkinCompatSupportable {
+    private final SkinRecyclerViewHelper mSkinRecyclerViewHelper;
+    private SkinCompatBackgroundHelper mBackgroundTintHelper;
+
+    public SkinCompatRecyclerView(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public SkinCompatRecyclerView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, androidx.recyclerview.R.attr.recyclerViewStyle);
+    }
+
+    public SkinCompatRecyclerView(@NonNull Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mBackgroundTintHelper = new SkinCompatBackgroundHelper(this);
+        mBackgroundTintHelper.loadFromAttributes(attrs, defStyleAttr);
+        mSkinRecyclerViewHelper = SkinRecyclerViewHelper.install(this);
+    }
+
+    @Override
+    public void setBackgroundResource(int resId) {
+        super.setBackgroundResource(resId);
+        if (mBackgroundTintHelper != null) {
+            mBackgroundTintHelper.onSetBackgroundResource(resId);
+        }
+    }
+
+    @Override
+    public void applySkin() {
+        if (mBackgroundTintHelper != null) {
+            mBackgroundTintHelper.applySkin();
+        }
+        mSkinRecyclerViewHelper.applySkin();
+    }
+}
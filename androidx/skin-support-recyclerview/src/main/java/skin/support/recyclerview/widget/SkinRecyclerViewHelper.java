@@ -0,0 +1,107 @@
+package skin.support.recyclerview.widget;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import skin.support.SkinCompatManager;
+import skin.support.annotation.NonNull;
+import skin.support.recyclerview.R;
+import skin.support.widget.SkinCompatSupportable;
+
+/**
+ * Re-skins the items of a RecyclerView lazily. Each item view is stamped with the skin generation
+ * it was last skinned at, from the moment the skin factory inflates it, and is only re-skinned
+ * when it is attached while stale or when the RecyclerView itself is re-skinned while the item is
+ * on screen. Items in the view cache or the RecycledViewPool are skipped until they are reused.
+ */
+public final class SkinRecyclerViewHelper implements RecyclerView.OnChildAttachStateChangeListener {
+    private final RecyclerView mRecyclerView;
+
+    private SkinRecyclerViewHelper(RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+    }
+
+    /**
+     * Installs lazy item skinning on a RecyclerView that was not inflated by the skin factory.
+     *
+     * @param recyclerView The RecyclerView.
+     * @return The helper installed on the RecyclerView.
+     */
+    @NonNull
+    public static SkinRecyclerViewHelper install(@NonNull RecyclerView recyclerView) {
+        Object tag = recyclerView.getTag(R.id.skin_support_recycler_view_helper);
+        if (tag instanceof SkinRecyclerViewHelper) {
+            return (SkinRecyclerViewHelper) tag;
+        }
+        SkinRecyclerViewHelper helper = new SkinRecyclerViewHelper(recyclerView);
+        recyclerView.setTag(R.id.skin_support_recycler_view_helper, helper);
+        recyclerView.addOnChildAttachStateChangeListener(helper);
+        return helper;
+    }
+
+    public static boolean isInstalled(@NonNull RecyclerView recyclerView) {
+        return recyclerView.getTag(R.id.skin_support_recycler_view_helper) instanceof SkinRecyclerViewHelper;
+    }
+
+    /**
+     * @return true if the view is an item view inflated for or attached to an installed RecyclerView.
+     */
+    public static boolean isTrackedItem(@NonNull View view) {
+        return view.getTag(R.id.skin_support_skin_generation) != null;
+    }
+
+    /**
+     * Stamps an item view that has just been skinned, so its first attach does not skin it again.
+     *
+     * @param generation The skin generation the item was skinned at.
+     */
+    public static void markSkinned(@NonNull View itemView, int generation) {
+        itemView.setTag(R.id.skin_support_skin_generation, generation);
+    }
+
+    /**
+     * Re-skins the stale items currently attached to the RecyclerView.
+     */
+    public void applySkin() {
+        for (int i = 0; i < mRecyclerView.getChildCount(); i++) {
+            applySkinIfStale(mRecyclerView.getChildAt(i));
+        }
+    }
+
+    @Override
+    public void onChildViewAttachedToWindow(@NonNull View view) {
+        applySkinIfStale(view);
+    }
+
+    @Override
+    public void onChildViewDetachedFromWindow(@NonNull View view) {
+    }
+
+    private static void applySkinIfStale(View itemView) {
+        int generation = SkinCompatManager.getInstance().getSkinGeneration();
+        Object stamp = itemView.getTag(R.id.skin_support_skin_generation);
+        if (stamp instanceof Integer && (Integer) stamp == generation) {
+            return;
+        }
+        itemView.setTag(R.id.skin_support_skin_generation, generation);
+        applySkinRecursively(itemView);
+    }
+
+    private static void applySkinRecursively(View view) {
+        if (view instanceof SkinCompatSupportable) {
+            ((SkinCompatSupportable) view).applySkin();
+        }
+        if (view instanceof RecyclerView && isInstalled((RecyclerView) view)) {
+            // A nested list re-skins its own items.
+            return;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                applySkinRecursively(group.getChildAt(i));
+            }
+        }
+    }
+}
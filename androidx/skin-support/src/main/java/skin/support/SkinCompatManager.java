@@ -13,13 +13,20 @@ import android.util.Log;
 import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import skin.support.annotation.NonNull;
 import skin.support.annotation.Nullable;
 import skin.support.app.SkinActivityLifecycle;
+import skin.support.app.SkinApplyFilter;
 import skin.support.app.SkinLayoutInflater;
+import skin.support.app.SkinTagLayoutInflater;
 import skin.support.app.SkinWrapper;
 import skin.support.load.SkinAssetsLoader;
 import skin.support.load.SkinBuildInLoader;
@@ -28,6 +35,7 @@ import skin.support.load.SkinPrefixBuildInLoader;
 import skin.support.observe.SkinObservable;
 import skin.support.utils.SkinPreference;
 import skin.support.content.res.SkinCompatResources;
+import skin.support.content.res.SkinUserThemeChange;
 
 public class SkinCompatManager extends SkinObservable {
     private static final String TAG = "SkinCompatManager";
@@ -43,14 +51,26 @@ public class SkinCompatManager extends SkinObservable {
     private static final String ERROR_SKIN_LOAD_FAILED = "Failed to load skin: ";
     private static final String ERROR_SKIN_RESOURCE_FAILED = "Failed to load skin resources: ";
     private static final String ERROR_PACKAGE_INFO_FAILED = "Failed to get package info for: ";
+    private static final SkinLayoutInflater[] NO_INFLATERS = new SkinLayoutInflater[0];
+    private static final SkinWrapper[] NO_WRAPPERS = new SkinWrapper[0];
 
     private Context mAppContext;
     private final AtomicBoolean mLoading = new AtomicBoolean(false);
+    private final AtomicInteger mSkinGeneration = new AtomicInteger();
     private final List<SkinWrapper> mWrappers = new ArrayList<>();
+    private volatile SkinWrapper[] mWrappersSnapshot = NO_WRAPPERS;
     private final List<SkinLayoutInflater> mInflaters = new ArrayList<>();
+    private volatile Map<String, SkinLayoutInflater[]> mTagInflaters = Collections.emptyMap();
+    private volatile SkinLayoutInflater[] mFallbackInflaters = NO_INFLATERS;
+    private final List<SkinApplyFilter> mApplyFilters = new CopyOnWriteArrayList<>();
+    private final List<SkinApplyFilter> mApplyFiltersView = Collections.unmodifiableList(mApplyFilters);
     private final SparseArray<SkinLoaderStrategy> mStrategyMap = new SparseArray<>();
     private boolean mSkinAllActivityEnable = true;
     private boolean mSkinWindowBackgroundColorEnable = true;
+    private boolean mSkinTransitionEnable = false;
+    private boolean mSkinTransitionSuppressLayout = true;
+    private long mSkinTransitionDuration = 300;
+    private SkinMultiProcessChannel mMultiProcessChannel;
 
     private static volatile SkinCompatManager sInstance;
 
@@ -137,6 +157,48 @@ public class SkinCompatManager extends SkinObservable {
         return mStrategyMap;
     }
 
+    /**
+     * 获取皮肤版本号. 皮肤包或用户自定义主题每次变化后递增，可用于判断已应用的皮肤是否过期.
+     *
+     * @return 当前皮肤版本号.
+     */
+    public int getSkinGeneration() {
+        return mSkinGeneration.get();
+    }
+
+    /**
+     * 递增皮肤版本号. 在皮肤资源可能发生变化时调用.
+     *
+     * @return 新的皮肤版本号.
+     */
+    public int nextSkinGeneration() {
+        return mSkinGeneration.incrementAndGet();
+    }
+
+    @Override
+    public void notifyUpdateSkin(@Nullable Object arg) {
+        nextSkinGeneration();
+        super.notifyUpdateSkin(arg);
+    }
+
+    @Override
+    public void notifyUpdateSkinNow(@Nullable Object arg) {
+        nextSkinGeneration();
+        super.notifyUpdateSkinNow(arg);
+    }
+
+    /**
+     * 同一帧内的多次用户主题修改合并为一次通知, 携带所有改动的资源id.
+     */
+    @Nullable
+    @Override
+    protected Object mergeArgs(@Nullable Object pending, @Nullable Object arg) {
+        if (pending instanceof SkinUserThemeChange && arg instanceof SkinUserThemeChange) {
+            return ((SkinUserThemeChange) pending).merge((SkinUserThemeChange) arg);
+        }
+        return super.mergeArgs(pending, arg);
+    }
+
     /**
      * 自定义View换肤时，可选择添加一个{@link SkinLayoutInflater}
      *
@@ -145,19 +207,90 @@ public class SkinCompatManager extends SkinObservable {
     public SkinCompatManager addInflater(SkinLayoutInflater inflater) {
         if (inflater instanceof SkinWrapper) {
             mWrappers.add((SkinWrapper) inflater);
+            mWrappersSnapshot = mWrappers.toArray(NO_WRAPPERS);
         }
         mInflaters.add(inflater);
+        compileInflaters();
         return this;
     }
 
+    /**
+     * 将已注册的{@link SkinLayoutInflater}编译为标签名到候选Inflater的不可变映射.
+     * 每个标签的候选列表按注册顺序包含声明了该标签的Inflater以及所有未声明标签的Inflater.
+     */
+    private void compileInflaters() {
+        List<SkinLayoutInflater> fallback = new ArrayList<>();
+        Map<String, List<SkinLayoutInflater>> byTag = new HashMap<>();
+        for (SkinLayoutInflater inflater : mInflaters) {
+            if (inflater instanceof SkinTagLayoutInflater) {
+                for (String tag : ((SkinTagLayoutInflater) inflater).getSupportedTags()) {
+                    List<SkinLayoutInflater> candidates = byTag.get(tag);
+                    if (candidates == null) {
+                        candidates = new ArrayList<>(fallback);
+                        byTag.put(tag, candidates);
+                    }
+                    if (!candidates.contains(inflater)) {
+                        candidates.add(inflater);
+                    }
+                }
+            } else {
+                fallback.add(inflater);
+                for (List<SkinLayoutInflater> candidates : byTag.values()) {
+                    candidates.add(inflater);
+                }
+            }
+        }
+        Map<String, SkinLayoutInflater[]> tagInflaters = new HashMap<>(byTag.size() * 2);
+        for (Map.Entry<String, List<SkinLayoutInflater>> entry : byTag.entrySet()) {
+            tagInflaters.put(entry.getKey(), entry.getValue().toArray(NO_INFLATERS));
+        }
+        mTagInflaters = Collections.unmodifiableMap(tagInflaters);
+        mFallbackInflaters = fallback.toArray(NO_INFLATERS);
+    }
+
+    /**
+     * 获取可能创建指定标签View的{@link SkinLayoutInflater}，按注册顺序排列.
+     * 返回的数组为共享实例，调用方不能修改.
+     *
+     * @param name 布局文件中的标签名.
+     */
+    public SkinLayoutInflater[] getInflaters(String name) {
+        SkinLayoutInflater[] inflaters = mTagInflaters.get(name);
+        return inflaters != null ? inflaters : mFallbackInflaters;
+    }
+
     public List<SkinWrapper> getWrappers() {
         return new ArrayList<>(mWrappers);
     }
 
+    /**
+     * 获取已注册的{@link SkinWrapper}，按注册顺序排列.
+     * 与{@link #getWrappers()}不同，返回的数组为共享实例，不会为每次调用分配新列表，调用方不能修改.
+     */
+    public SkinWrapper[] getWrappersSnapshot() {
+        return mWrappersSnapshot;
+    }
+
     public List<SkinLayoutInflater> getInflaters() {
         return new ArrayList<>(mInflaters);
     }
 
+    /**
+     * 添加换肤过滤器，可将部分View的换肤延迟到合适的时机(如RecyclerView列表项绑定时).
+     *
+     * @param filter 在{@link skin.support.app.SkinCompatDelegate#applySkin()}中调用.
+     */
+    public SkinCompatManager addApplyFilter(SkinApplyFilter filter) {
+        if (!mApplyFilters.contains(filter)) {
+            mApplyFilters.add(filter);
+        }
+        return this;
+    }
+
+    public List<SkinApplyFilter> getApplyFilters() {
+        return mApplyFiltersView;
+    }
+
     /**
      * 恢复默认主题，使用应用自带资源.
      */
@@ -193,6 +326,76 @@ public class SkinCompatManager extends SkinObservable {
         return mSkinWindowBackgroundColorEnable;
     }
 
+    /**
+     * 设置换肤过渡动画. 开启后，换肤时先截取当前Activity画面覆盖在最上层，换肤完成后淡出截图.
+     *
+     * @param enable true: 开启截图淡出过渡; false: 直接换肤(默认).
+     */
+    public SkinCompatManager setSkinTransitionEnable(boolean enable) {
+        mSkinTransitionEnable = enable;
+        return this;
+    }
+
+    public boolean isSkinTransitionEnable() {
+        return mSkinTransitionEnable;
+    }
+
+    /**
+     * 设置过渡动画期间是否暂停布局. 仅在Android 10及以上生效.
+     *
+     * @param suppress true: 换肤期间暂停布局，结束后统一布局一次(默认); false: 不暂停.
+     */
+    public SkinCompatManager setSkinTransitionSuppressLayout(boolean suppress) {
+        mSkinTransitionSuppressLayout = suppress;
+        return this;
+    }
+
+    public boolean isSkinTransitionSuppressLayout() {
+        return mSkinTransitionSuppressLayout;
+    }
+
+    /**
+     * 设置过渡动画时长.
+     *
+     * @param duration 淡出时长，单位毫秒.
+     */
+    public SkinCompatManager setSkinTransitionDuration(long duration) {
+        mSkinTransitionDuration = duration;
+        return this;
+    }
+
+    public long getSkinTransitionDuration() {
+        return mSkinTransitionDuration;
+    }
+
+    /**
+     * 设置多进程换肤同步. 开启后，任一进程中的换肤及用户自定义主题修改会同步到其他开启了该选项的进程.
+     *
+     * @param enable true: 开启多进程同步; false: 关闭(默认).
+     */
+    public SkinCompatManager setSkinMultiProcessEnable(boolean enable) {
+        if (enable && mMultiProcessChannel == null) {
+            mMultiProcessChannel = new SkinMultiProcessChannel(mAppContext);
+            mMultiProcessChannel.start();
+        } else if (!enable && mMultiProcessChannel != null) {
+            mMultiProcessChannel.stop();
+            mMultiProcessChannel = null;
+        }
+        return this;
+    }
+
+    public boolean isSkinMultiProcessEnable() {
+        return mMultiProcessChannel != null;
+    }
+
+    /**
+     * @return 多进程同步通道，未开启多进程同步时返回null.
+     */
+    @Nullable
+    public SkinMultiProcessChannel getMultiProcessChannel() {
+        return mMultiProcessChannel;
+    }
+
     /**
      * 加载记录的皮肤包，一般在Application中初始化换肤框架后调用.
      */
@@ -239,21 +442,36 @@ public class SkinCompatManager extends SkinObservable {
      * @return 返回异步任务对象，若策略无效则返回 null。
      */
     public AsyncTask<String, Void, String> loadSkin(String skinName, SkinLoaderListener listener, int strategy) {
+        return loadSkin(skinName, listener, strategy, true);
+    }
+
+    /**
+     * 加载其他进程切换的皮肤包，加载完成后不再同步给其他进程.
+     */
+    AsyncTask<String, Void, String> loadSkinFromRemote(String skinName, int strategy) {
+        return loadSkin(skinName, null, strategy, false);
+    }
+
+    private AsyncTask<String, Void, String> loadSkin(String skinName, SkinLoaderListener listener, int strategy,
+                                                     boolean publish) {
         SkinLoaderStrategy loaderStrategy = mStrategyMap.get(strategy);
         if (loaderStrategy == null) {
             Log.w(TAG, ERROR_INVALID_STRATEGY + strategy);
             return null;
         }
-        return new SkinLoadTask(listener, loaderStrategy).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, skinName);
+        return new SkinLoadTask(listener, loaderStrategy, publish)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, skinName);
     }
 
     private class SkinLoadTask extends AsyncTask<String, Void, String> {
         private final SkinLoaderListener mListener;
         private final SkinLoaderStrategy mStrategy;
+        private final boolean mPublish;
 
-        SkinLoadTask(@Nullable SkinLoaderListener listener, @NonNull SkinLoaderStrategy strategy) {
+        SkinLoadTask(@Nullable SkinLoaderListener listener, @NonNull SkinLoaderStrategy strategy, boolean publish) {
             mListener = listener;
             mStrategy = strategy;
+            mPublish = publish;
         }
 
         @Override
@@ -295,7 +513,11 @@ public class SkinCompatManager extends SkinObservable {
             try {
                 if (skinName != null) {
                     SkinPreference.getInstance().setSkinName(skinName).setSkinStrategy(mStrategy.getType()).commitEditor();
-                    notifyUpdateSkin();
+                    if (mPublish && mMultiProcessChannel != null) {
+                        mMultiProcessChannel.publishSkin(skinName, mStrategy.getType());
+                    }
+                    // Re-skin before onSuccess(), as listeners have always seen; this is the main thread.
+                    notifyUpdateSkinNow(null);
                     if (mListener != null) {
                         mListener.onSuccess();
                     }
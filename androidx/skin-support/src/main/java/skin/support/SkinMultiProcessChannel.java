@@ -0,0 +1,256 @@
+package skin.support;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+import skin.support.content.res.SkinCompatUserThemeManager;
+import skin.support.utils.SkinPreference;
+import skin.support.utils.Slog;
+
+/**
+ * Propagates skin switches and user theme edits to every process of the app that runs
+ * {@link SkinCompatManager}.
+ * <p>
+ * The state lives in a small memory-mapped file guarded by a file lock: a generation counter, the
+ * pid of the last writer, the kind of change and the current skin name and strategy. After each
+ * write the publisher closes a sibling signal file, which wakes the {@link FileObserver} of the
+ * other processes; they read the mapped state and apply the change without IPC or polling.
+ */
+public final class SkinMultiProcessChannel {
+    private static final String TAG = "SkinMultiProcessChannel";
+
+    private static final String DIR_NAME = "skin-support";
+    private static final String STATE_FILE_NAME = "skin-state";
+    private static final String SIGNAL_FILE_NAME = "skin-state.signal";
+
+    private static final int MAGIC = 0x534b494e; // "SKIN"
+    private static final int LAYOUT_VERSION = 1;
+    private static final int STATE_SIZE = 4096;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_LAYOUT_VERSION = 4;
+    private static final int OFFSET_GENERATION = 8;
+    private static final int OFFSET_WRITER_PID = 16;
+    private static final int OFFSET_EVENT = 20;
+    private static final int OFFSET_STRATEGY = 24;
+    private static final int OFFSET_NAME_LENGTH = 28;
+    private static final int OFFSET_NAME = 32;
+    private static final int MAX_NAME_LENGTH = STATE_SIZE - OFFSET_NAME;
+
+    private static final int EVENT_SKIN = 1;
+    private static final int EVENT_USER_THEME = 2;
+
+    private final File mStateFile;
+    private final File mSignalFile;
+    private final int mPid = Process.myPid();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mState;
+    private FileObserver mObserver;
+    private long mLastSeenGeneration;
+
+    SkinMultiProcessChannel(@NonNull Context context) {
+        File dir = new File(context.getFilesDir(), DIR_NAME);
+        mStateFile = new File(dir, STATE_FILE_NAME);
+        mSignalFile = new File(dir, SIGNAL_FILE_NAME);
+    }
+
+    /**
+     * Maps the state file and starts listening for changes published by other processes.
+     */
+    void start() {
+        mExecutor.execute(() -> {
+            try {
+                open();
+                mLastSeenGeneration = readSnapshot().generation;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open " + mStateFile, e);
+                return;
+            }
+            mMainHandler.post(this::startObserving);
+        });
+    }
+
+    /**
+     * Stops listening for changes. The mapped state stays valid until the process exits.
+     */
+    void stop() {
+        mMainHandler.post(() -> {
+            if (mObserver != null) {
+                mObserver.stopWatching();
+                mObserver = null;
+            }
+        });
+    }
+
+    /**
+     * Publishes a skin switch to the other processes.
+     *
+     * @param skinName The loaded skin name, empty for the default skin.
+     * @param strategy The loader strategy the skin was loaded with.
+     */
+    public void publishSkin(@Nullable String skinName, int strategy) {
+        mExecutor.execute(() -> publish(EVENT_SKIN, skinName, strategy));
+    }
+
+    /**
+     * Publishes a user theme edit to the other processes. Called once the edit has been written
+     * to the user theme store.
+     */
+    public void publishUserTheme() {
+        mExecutor.execute(() -> publish(EVENT_USER_THEME, SkinPreference.getInstance().getSkinName(),
+                SkinPreference.getInstance().getSkinStrategy()));
+    }
+
+    private void open() throws IOException {
+        if (mState != null) {
+            return;
+        }
+        File dir = mStateFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        mFile = new RandomAccessFile(mStateFile, "rw");
+        FileChannel channel = mFile.getChannel();
+        try (FileLock ignored = channel.lock()) {
+            if (mFile.length() < STATE_SIZE) {
+                mFile.setLength(STATE_SIZE);
+            }
+            mState = channel.map(FileChannel.MapMode.READ_WRITE, 0, STATE_SIZE);
+            if (mState.getInt(OFFSET_MAGIC) != MAGIC
+                    || mState.getInt(OFFSET_LAYOUT_VERSION) != LAYOUT_VERSION) {
+                mState.putLong(OFFSET_GENERATION, 0);
+                mState.putInt(OFFSET_WRITER_PID, 0);
+                mState.putInt(OFFSET_EVENT, 0);
+                mState.putInt(OFFSET_STRATEGY, SkinCompatManager.SKIN_LOADER_STRATEGY_NONE);
+                mState.putInt(OFFSET_NAME_LENGTH, 0);
+                mState.putInt(OFFSET_LAYOUT_VERSION, LAYOUT_VERSION);
+                mState.putInt(OFFSET_MAGIC, MAGIC);
+            }
+        }
+    }
+
+    private void publish(int event, @Nullable String skinName, int strategy) {
+        try {
+            open();
+            byte[] name = TextUtils.isEmpty(skinName) ? new byte[0] : skinName.getBytes(StandardCharsets.UTF_8);
+            if (name.length > MAX_NAME_LENGTH) {
+                Log.e(TAG, "Skin name too long to publish: " + skinName);
+                return;
+            }
+            try (FileLock ignored = mFile.getChannel().lock()) {
+                long generation = mState.getLong(OFFSET_GENERATION) + 1;
+                mState.putInt(OFFSET_WRITER_PID, mPid);
+                mState.putInt(OFFSET_EVENT, event);
+                mState.putInt(OFFSET_STRATEGY, strategy);
+                mState.putInt(OFFSET_NAME_LENGTH, name.length);
+                for (int i = 0; i < name.length; i++) {
+                    mState.put(OFFSET_NAME + i, name[i]);
+                }
+                mState.putLong(OFFSET_GENERATION, generation);
+                mLastSeenGeneration = generation;
+            }
+            try (FileOutputStream signal = new FileOutputStream(mSignalFile)) {
+                signal.write(event);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to publish skin state", e);
+        }
+    }
+
+    @NonNull
+    private Snapshot readSnapshot() throws IOException {
+        Snapshot snapshot = new Snapshot();
+        try (FileLock ignored = mFile.getChannel().lock(0, STATE_SIZE, true)) {
+            snapshot.generation = mState.getLong(OFFSET_GENERATION);
+            snapshot.writerPid = mState.getInt(OFFSET_WRITER_PID);
+            snapshot.event = mState.getInt(OFFSET_EVENT);
+            snapshot.strategy = mState.getInt(OFFSET_STRATEGY);
+            int length = Math.min(Math.max(mState.getInt(OFFSET_NAME_LENGTH), 0), MAX_NAME_LENGTH);
+            byte[] name = new byte[length];
+            for (int i = 0; i < length; i++) {
+                name[i] = mState.get(OFFSET_NAME + i);
+            }
+            snapshot.skinName = new String(name, StandardCharsets.UTF_8);
+        }
+        return snapshot;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void startObserving() {
+        if (mObserver != null) {
+            return;
+        }
+        File dir = mSignalFile.getParentFile();
+        if (dir == null) {
+            return;
+        }
+        mObserver = new FileObserver(dir.getAbsolutePath(), FileObserver.CLOSE_WRITE) {
+            @Override
+            public void onEvent(int event, @Nullable String path) {
+                if (SIGNAL_FILE_NAME.equals(path)) {
+                    mExecutor.execute(SkinMultiProcessChannel.this::onSignal);
+                }
+            }
+        };
+        mObserver.startWatching();
+    }
+
+    private void onSignal() {
+        final Snapshot snapshot;
+        try {
+            snapshot = readSnapshot();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read skin state", e);
+            return;
+        }
+        if (snapshot.generation <= mLastSeenGeneration) {
+            return;
+        }
+        mLastSeenGeneration = snapshot.generation;
+        if (snapshot.writerPid == mPid) {
+            return;
+        }
+        if (Slog.DEBUG) {
+            Slog.i(TAG, "Remote skin change #" + snapshot.generation + " from pid " + snapshot.writerPid);
+        }
+        if (snapshot.event == EVENT_USER_THEME) {
+            // Reads the store on the user theme save thread, only the notification is posted.
+            SkinCompatUserThemeManager.get().reload(() -> SkinCompatManager.getInstance().notifyUpdateSkin());
+        } else if (snapshot.event == EVENT_SKIN) {
+            mMainHandler.post(() -> SkinCompatManager.getInstance()
+                    .loadSkinFromRemote(snapshot.skinName, snapshot.strategy));
+        }
+    }
+
+    private static final class Snapshot {
+        long generation;
+        int writerPid;
+        int event;
+        int strategy;
+        String skinName;
+    }
+}
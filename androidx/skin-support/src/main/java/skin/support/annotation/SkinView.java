@@ -0,0 +1,27 @@
+package skin.support.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+/**
+ * Marks a skinnable view for the skin-support-compiler annotation processor, which generates a
+ * {@link skin.support.app.SkinTagLayoutInflater} that creates the annotated views with direct
+ * constructor calls instead of reflection.
+ * <p>
+ * The annotated class must be a public, non-abstract {@link android.view.View} with a public
+ * {@code (Context, AttributeSet)} constructor.
+ */
+@Documented
+@Retention(CLASS)
+@Target({TYPE})
+public @interface SkinView {
+    /**
+     * @return The layout tags the annotated view is created for, e.g. the class name of the
+     * framework or library view it replaces. Defaults to the annotated class's own name.
+     */
+    String[] value() default {};
+}
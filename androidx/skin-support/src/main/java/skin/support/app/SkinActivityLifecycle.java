@@ -3,19 +3,33 @@ package skin.support.app;
 import android.app.Activity;
 import android.app.Application;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewGroupOverlay;
+import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.WeakHashMap;
 
 import skin.support.SkinCompatManager;
 import skin.support.annotation.Skinable;
 import skin.support.content.res.SkinCompatResources;
+import skin.support.content.res.SkinUserThemeChange;
 import skin.support.observe.SkinObservable;
 import skin.support.observe.SkinObserver;
 import skin.support.utils.Slog;
@@ -37,6 +51,11 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
     private final WeakHashMap<Context, LazySkinObserver> mSkinObserverMap = new WeakHashMap<>();
     private WeakReference<Activity> mCurActivityRef;
 
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashSet<LazySkinObserver> mIdlePendingObservers = new LinkedHashSet<>();
+    private final MessageQueue.IdleHandler mIdleApplier = this::applyNextPendingWhenIdle;
+    private boolean mIdleApplierScheduled;
+
     /**
      * Initializes the singleton instance and registers lifecycle callbacks.
      *
@@ -66,7 +85,7 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
     public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
         if (isContextSkinEnable(activity)) {
             installLayoutFactory(activity);
-            updateWindowBackground(activity);
+            updateWindowBackground(activity, null);
             if (activity instanceof SkinCompatSupportable) {
                 ((SkinCompatSupportable) activity).applySkin();
             }
@@ -84,6 +103,7 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
         if (isContextSkinEnable(activity)) {
             LazySkinObserver observer = getObserver(activity);
             SkinCompatManager.getInstance().addObserver(observer);
+            mIdlePendingObservers.remove(observer);
             observer.updateSkinIfNeeded();
         }
     }
@@ -106,7 +126,7 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
     public void onActivityDestroyed(Activity activity) {
         if (isContextSkinEnable(activity)) {
             SkinCompatManager.getInstance().removeObserver(getObserver(activity));
-            mSkinObserverMap.remove(activity);
+            mIdlePendingObservers.remove(mSkinObserverMap.remove(activity));
             mSkinDelegateMap.remove(activity);
         }
     }
@@ -164,10 +184,16 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
      *
      * @param activity The activity to update.
      */
-    private void updateWindowBackground(@NonNull Activity activity) {
+    /**
+     * @param change The user theme edits being applied, or null if anything may have changed.
+     *               Setting the window background redraws the whole window, so it is skipped for
+     *               edits that do not touch it.
+     */
+    private void updateWindowBackground(@NonNull Activity activity, @Nullable SkinUserThemeChange change) {
         if (SkinCompatManager.getInstance().isSkinWindowBackgroundEnable()) {
             int windowBackgroundResId = SkinCompatThemeUtils.getWindowBackgroundResId(activity);
-            if (SkinCompatHelper.checkResourceId(windowBackgroundResId) != SkinCompatHelper.INVALID_ID) {
+            if (SkinCompatHelper.checkResourceId(windowBackgroundResId) != SkinCompatHelper.INVALID_ID
+                    && (change == null || change.affects(windowBackgroundResId))) {
                 Drawable drawable = SkinCompatResources.getDrawable(activity, windowBackgroundResId);
                 if (drawable != null) {
                     activity.getWindow().setBackgroundDrawable(drawable);
@@ -176,6 +202,118 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
         }
     }
 
+    /**
+     * Queues a background activity to be re-skinned the next time the main looper is idle, so that
+     * returning to it does not pay the apply cost during the transition. Must be called on the main thread.
+     *
+     * @param observer The observer of the background activity.
+     */
+    private void scheduleIdleApply(@NonNull LazySkinObserver observer) {
+        if (!mSkinObserverMap.containsValue(observer)) {
+            return;
+        }
+        mIdlePendingObservers.add(observer);
+        if (!mIdleApplierScheduled) {
+            mIdleApplierScheduled = true;
+            Looper.myQueue().addIdleHandler(mIdleApplier);
+        }
+    }
+
+    /**
+     * Re-skins one pending activity per idle pass to keep each slice of main-thread work short.
+     *
+     * @return True to stay registered while activities are still pending.
+     */
+    private boolean applyNextPendingWhenIdle() {
+        Iterator<LazySkinObserver> it = mIdlePendingObservers.iterator();
+        if (it.hasNext()) {
+            LazySkinObserver observer = it.next();
+            it.remove();
+            observer.updateSkinIfNeeded();
+        }
+        mIdleApplierScheduled = !mIdlePendingObservers.isEmpty();
+        return mIdleApplierScheduled;
+    }
+
+    /**
+     * Covers the activity with a snapshot of its current content, runs the skin apply underneath, and
+     * then cross-fades the snapshot away, so the user sees one transition instead of the re-skin
+     * progressing across several frames. Falls back to running the apply directly when the decor view
+     * has not been laid out yet.
+     *
+     * @param activity The foreground activity.
+     * @param apply    The skin apply to hide behind the snapshot.
+     */
+    private void runWithSnapshotTransition(@NonNull Activity activity, @NonNull Runnable apply) {
+        View decor = activity.getWindow().peekDecorView();
+        if (!(decor instanceof ViewGroup)
+                || decor.getWidth() == 0 || decor.getHeight() == 0) {
+            apply.run();
+            return;
+        }
+        ViewGroup decorGroup = (ViewGroup) decor;
+        Bitmap snapshot;
+        try {
+            snapshot = captureSnapshot(decorGroup);
+        } catch (RuntimeException | OutOfMemoryError e) {
+            if (Slog.DEBUG) {
+                Slog.i(TAG, "Failed to capture snapshot for " + activity + ": " + e);
+            }
+            apply.run();
+            return;
+        }
+        ImageView cover = new ImageView(activity);
+        cover.setImageBitmap(snapshot);
+        cover.measure(View.MeasureSpec.makeMeasureSpec(decor.getWidth(), View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(decor.getHeight(), View.MeasureSpec.EXACTLY));
+        cover.layout(0, 0, decor.getWidth(), decor.getHeight());
+        final ViewGroupOverlay overlay = decorGroup.getOverlay();
+        overlay.add(cover);
+
+        boolean suppressLayout = SkinCompatManager.getInstance().isSkinTransitionSuppressLayout()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        if (suppressLayout) {
+            decorGroup.suppressLayout(true);
+        }
+        try {
+            apply.run();
+        } finally {
+            if (suppressLayout) {
+                // Re-enabling issues a single layout request if any was swallowed during the apply.
+                decorGroup.suppressLayout(false);
+            }
+        }
+
+        cover.animate()
+                .alpha(0f)
+                .setDuration(SkinCompatManager.getInstance().getSkinTransitionDuration())
+                .withEndAction(() -> {
+                    overlay.remove(cover);
+                    cover.setImageDrawable(null);
+                    snapshot.recycle();
+                });
+    }
+
+    /**
+     * Draws the decor view into a bitmap, recording it into a {@link Picture} on P and above so the
+     * result is a hardware bitmap that does not occupy the Java heap.
+     */
+    @NonNull
+    private static Bitmap captureSnapshot(@NonNull View decor) {
+        int width = decor.getWidth();
+        int height = decor.getHeight();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            Picture picture = new Picture();
+            Canvas canvas = picture.beginRecording(width, height);
+            decor.draw(canvas);
+            picture.endRecording();
+            return Bitmap.createBitmap(picture);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        decor.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
     /**
      * Checks if skinning is enabled for the given context.
      *
@@ -190,11 +328,16 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
 
     /**
      * An observer that lazily applies skin updates to a context, deferring updates for inactive activities
-     * until they resume.
+     * until the main looper is idle, or at the latest until they resume.
      */
     private static class LazySkinObserver implements SkinObserver {
         private final Context mContext;
         private boolean mMarkNeedUpdate;
+        /**
+         * The user theme edits missed while inactive, null if a deferred update was not one.
+         */
+        @Nullable
+        private SkinUserThemeChange mPendingChange;
 
         LazySkinObserver(@NonNull Context context) {
             this.mContext = context;
@@ -202,15 +345,30 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
 
         @Override
         public void updateSkin(@NonNull SkinObservable observable, @Nullable Object arg) {
+            final SkinUserThemeChange change = arg instanceof SkinUserThemeChange ? (SkinUserThemeChange) arg : null;
             // Apply immediately for current activity, non-activity contexts, or if no current activity
             Activity currentActivity = SkinActivityLifecycle.sInstance != null
                     && SkinActivityLifecycle.sInstance.mCurActivityRef != null
                     ? SkinActivityLifecycle.sInstance.mCurActivityRef.get()
                     : null;
-            if (currentActivity == null || mContext == currentActivity || !(mContext instanceof Activity)) {
-                updateSkinForce();
+            if (currentActivity != null && mContext == currentActivity
+                    && SkinCompatManager.getInstance().isSkinTransitionEnable()
+                    && Looper.myLooper() == Looper.getMainLooper()) {
+                sInstance.runWithSnapshotTransition(currentActivity, () -> updateSkinForce(change));
+            } else if (currentActivity == null || mContext == currentActivity || !(mContext instanceof Activity)) {
+                updateSkinForce(change);
             } else {
+                if (!mMarkNeedUpdate) {
+                    mPendingChange = change;
+                } else if (mPendingChange != null) {
+                    mPendingChange = change != null ? mPendingChange.merge(change) : null;
+                }
                 mMarkNeedUpdate = true;
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    sInstance.scheduleIdleApply(this);
+                } else {
+                    sInstance.mMainHandler.post(() -> sInstance.scheduleIdleApply(this));
+                }
             }
         }
 
@@ -219,14 +377,14 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
          */
         void updateSkinIfNeeded() {
             if (mMarkNeedUpdate) {
-                updateSkinForce();
+                updateSkinForce(mPendingChange);
             }
         }
 
         /**
          * Forces a skin update for the associated context.
          */
-        private void updateSkinForce() {
+        private void updateSkinForce(@Nullable SkinUserThemeChange change) {
             if (Slog.DEBUG) {
                 Slog.i(TAG, "Applying skin to context: " + mContext);
             }
@@ -234,13 +392,14 @@ public final class SkinActivityLifecycle implements Application.ActivityLifecycl
                 return;
             }
             if (mContext instanceof Activity && sInstance.isContextSkinEnable(mContext)) {
-                sInstance.updateWindowBackground((Activity) mContext);
+                sInstance.updateWindowBackground((Activity) mContext, change);
             }
             sInstance.getSkinDelegate(mContext).applySkin();
             if (mContext instanceof SkinCompatSupportable) {
                 ((SkinCompatSupportable) mContext).applySkin();
             }
             mMarkNeedUpdate = false;
+            mPendingChange = null;
         }
     }
 }
\ No newline at end of file
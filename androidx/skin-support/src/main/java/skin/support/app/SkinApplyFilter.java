@@ -0,0 +1,28 @@
+package skin.support.app;
+
+import android.view.View;
+
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+
+/**
+ * Lets integrations take over when a view created by {@link SkinCompatDelegate} is re-skinned.
+ * A filter that defers a view becomes responsible for applying the skin to it later.
+ */
+public interface SkinApplyFilter {
+    /**
+     * Called when {@link SkinCompatDelegate} has created a view, which is skinned by its constructor.
+     * May be called on a background thread when the view is inflated off the main thread.
+     *
+     * @param parent     The parent the view is inflated into, if any.
+     * @param view       The created view.
+     * @param generation The skin generation the view was skinned at.
+     */
+    void onViewCreated(@Nullable View parent, @NonNull View view, int generation);
+
+    /**
+     * @param view A skinnable view about to be re-skinned by {@link SkinCompatDelegate#applySkin()}.
+     * @return true to skip the view now, false to let the delegate apply the skin.
+     */
+    boolean shouldDeferApply(@NonNull View view);
+}
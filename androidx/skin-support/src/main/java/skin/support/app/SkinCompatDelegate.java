@@ -1,6 +1,7 @@
 package skin.support.app;
 
 import android.content.Context;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -20,6 +21,10 @@ import skin.support.widget.SkinCompatSupportable;
  * A custom {@link LayoutInflater.Factory2} implementation that manages skinning for views.
  * It creates views with skin support, tracks {@link SkinCompatSupportable} instances,
  * and applies skin changes using a thread-safe set of weak references.
+ * <p>
+ * Views may be created from any thread, e.g. by AsyncLayoutInflater or a pre-inflation thread;
+ * those are tracked from the moment they are attached. {@link #applySkin()} must be called on the
+ * main thread.
  *
  * @author ximsfei
  * @since 2017/1/9
@@ -27,7 +32,7 @@ import skin.support.widget.SkinCompatSupportable;
 
 public class SkinCompatDelegate implements LayoutInflater.Factory2 {
     private final Context mContext;
-    private SkinCompatViewInflater mSkinCompatViewInflater;
+    private final SkinCompatViewInflater mSkinCompatViewInflater = new SkinCompatViewInflater();
 
     private final Set<WeakReference<SkinCompatSupportable>> mSkinHelpers =
             Collections.newSetFromMap(new ConcurrentHashMap<>(100));
@@ -38,12 +43,17 @@ public class SkinCompatDelegate implements LayoutInflater.Factory2 {
 
     @Override
     public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+        int generation = SkinCompatManager.getInstance().getSkinGeneration();
         View view = createView(parent, name, context, attrs);
         if (view == null) {
             return null;
         }
+        List<SkinApplyFilter> filters = SkinCompatManager.getInstance().getApplyFilters();
+        for (int i = 0; i < filters.size(); i++) {
+            filters.get(i).onViewCreated(parent, view, generation);
+        }
         if (view instanceof SkinCompatSupportable) {
-            mSkinHelpers.add(new WeakReference<>((SkinCompatSupportable) view));
+            register((SkinCompatSupportable) view, generation);
         }
 
         return view;
@@ -51,26 +61,42 @@ public class SkinCompatDelegate implements LayoutInflater.Factory2 {
 
     @Override
     public View onCreateView(String name, Context context, AttributeSet attrs) {
-        View view = createView(null, name, context, attrs);
+        return onCreateView(null, name, context, attrs);
+    }
 
-        if (view == null) {
-            return null;
-        }
-        if (view instanceof SkinCompatSupportable) {
-            mSkinHelpers.add(new WeakReference<>((SkinCompatSupportable) view));
+    /**
+     * Tracks a created view. A view built off the main thread is published once it is attached,
+     * which happens on the main thread after its inflation has finished: until then an
+     * {@link #applySkin()} pass could reach the view while its subtree is still being built. If the
+     * skin changed since the view was created, it is re-skinned when it is published.
+     *
+     * @param generation The skin generation before the view was created.
+     */
+    private void register(final SkinCompatSupportable view, final int generation) {
+        if (Looper.myLooper() == Looper.getMainLooper() || !(view instanceof View)) {
+            mSkinHelpers.add(new WeakReference<>(view));
+            return;
         }
+        ((View) view).addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+                v.removeOnAttachStateChangeListener(this);
+                mSkinHelpers.add(new WeakReference<>(view));
+                if (SkinCompatManager.getInstance().getSkinGeneration() != generation) {
+                    view.applySkin();
+                }
+            }
 
-        return view;
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+            }
+        });
     }
 
     public View createView(View parent, final String name, @NonNull Context context,
                            @NonNull AttributeSet attrs) {
-        if (mSkinCompatViewInflater == null) {
-            mSkinCompatViewInflater = new SkinCompatViewInflater();
-        }
-
-        List<SkinWrapper> wrapperList = SkinCompatManager.getInstance().getWrappers();
-        for (SkinWrapper wrapper : wrapperList) {
+        SkinWrapper[] wrappers = SkinCompatManager.getInstance().getWrappersSnapshot();
+        for (SkinWrapper wrapper : wrappers) {
             Context wrappedContext = wrapper.wrapContext(mContext, parent, attrs);
             if (wrappedContext != null) {
                 context = wrappedContext;
@@ -88,11 +114,15 @@ public class SkinCompatDelegate implements LayoutInflater.Factory2 {
             return;
         }
 
+        List<SkinApplyFilter> filters = SkinCompatManager.getInstance().getApplyFilters();
         Iterator<WeakReference<SkinCompatSupportable>> it = mSkinHelpers.iterator();
         while (it.hasNext()) {
             WeakReference<SkinCompatSupportable> ref = it.next();
             SkinCompatSupportable helper = ref.get();
             if (helper != null) {
+                if (helper instanceof View && isApplyDeferred(filters, (View) helper)) {
+                    continue;
+                }
                 helper.applySkin();
             } else {
                 it.remove(); // 清理掉已经被 GC 的引用
@@ -100,6 +130,15 @@ public class SkinCompatDelegate implements LayoutInflater.Factory2 {
         }
     }
 
+    private static boolean isApplyDeferred(List<SkinApplyFilter> filters, View view) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i).shouldDeferApply(view)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Set<WeakReference<SkinCompatSupportable>> getSkinHelpers() {
         return mSkinHelpers;
     }
@@ -9,11 +9,15 @@ import android.util.AttributeSet;
 import android.view.InflateException;
 import android.view.View;
 
-import androidx.collection.SimpleArrayMap;
-
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import skin.support.SkinCompatManager;
 import skin.support.annotation.NonNull;
@@ -22,6 +26,9 @@ import skin.support.view.ViewCompat;
 
 /**
  * Created by ximsfei on 17-1-9.
+ * <p>
+ * Stateless and safe to use from several threads at once, e.g. with AsyncLayoutInflater: the
+ * constructor arguments are allocated per call and the class lookup caches are concurrent.
  */
 
 public class SkinCompatViewInflater {
@@ -37,10 +44,21 @@ public class SkinCompatViewInflater {
 
     private static final String LOG_TAG = "AppCompatViewInflater";
 
-    private static final SimpleArrayMap<String, Constructor<? extends View>> sConstructorMap =
-            new SimpleArrayMap<>();
+    /**
+     * Marks a bare tag name that none of {@link #sClassPrefixList} resolves.
+     */
+    private static final String NO_PREFIX = "";
 
-    private final Object[] mConstructorArgs = new Object[2];
+    /**
+     * Caches of other class loaders, e.g. of plugins or dynamic features, which may be unloaded.
+     */
+    private static final Map<ClassLoader, ClassLookupCache> sClassLookupCaches =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    /**
+     * Cache of the class loader of this library, which lives as long as the app.
+     */
+    private static final ClassLookupCache sAppClassLookupCache = new ClassLookupCache(false);
+    private static final ClassLookupCache sBootClassLookupCache = new ClassLookupCache(false);
 
     @Nullable
     public final View createView(View parent, final String name, @NonNull Context context, @NonNull AttributeSet attrs) {
@@ -60,16 +78,14 @@ public class SkinCompatViewInflater {
 
 
     private View createViewFromInflater(Context context, String name, AttributeSet attrs) {
-        View view = null;
-        for (SkinLayoutInflater inflater : SkinCompatManager.getInstance().getInflaters()) {
-            view = inflater.createView(context, name, attrs);
-            if (view == null) {
-                continue;
-            } else {
-                break;
+        SkinLayoutInflater[] inflaters = SkinCompatManager.getInstance().getInflaters(name);
+        for (SkinLayoutInflater inflater : inflaters) {
+            View view = inflater.createView(context, name, attrs);
+            if (view != null) {
+                return view;
             }
         }
-        return view;
+        return null;
     }
 
     private View createViewFromTag(Context context, String name, AttributeSet attrs) {
@@ -78,48 +94,69 @@ public class SkinCompatViewInflater {
         }
 
         try {
-            mConstructorArgs[0] = context;
-            mConstructorArgs[1] = attrs;
+            final Object[] constructorArgs = {context, attrs};
 
             if (-1 == name.indexOf('.')) {
-                for (int i = 0; i < sClassPrefixList.length; i++) {
-                    final View view = createViewByPrefix(context, name, sClassPrefixList[i]);
-                    if (view != null) {
-                        return view;
-                    }
-                }
-                return null;
+                return createViewFromBareName(context, name, constructorArgs);
             } else {
-                return createViewByPrefix(context, name, null);
+                return createViewByPrefix(context, name, null, constructorArgs);
             }
         } catch (Exception e) {
             // We do not want to catch these, lets return null and let the actual LayoutInflater
             // try
             return null;
-        } finally {
-            // Don't retain references on context.
-            mConstructorArgs[0] = null;
-            mConstructorArgs[1] = null;
         }
     }
 
-    private View createViewByPrefix(Context context, String name, String prefix)
-            throws ClassNotFoundException, InflateException {
-        Constructor<? extends View> constructor = sConstructorMap.get(name);
+    private View createViewFromBareName(Context context, String name, Object[] constructorArgs) {
+        ClassLookupCache cache = getClassLookupCache(context.getClassLoader());
+        String prefix = cache.resolvedPrefixes.get(name);
+        if (prefix != null) {
+            return NO_PREFIX.equals(prefix) ? null : createViewByPrefix(context, name, prefix, constructorArgs);
+        }
+        boolean allMissed = true;
+        for (int i = 0; i < sClassPrefixList.length; i++) {
+            final View view = createViewByPrefix(context, name, sClassPrefixList[i], constructorArgs);
+            if (view != null) {
+                cache.resolvedPrefixes.put(name, sClassPrefixList[i]);
+                return view;
+            }
+            allMissed &= cache.misses.contains(sClassPrefixList[i] + name);
+        }
+        if (allMissed) {
+            cache.resolvedPrefixes.put(name, NO_PREFIX);
+        }
+        return null;
+    }
 
-        try {
-            if (constructor == null) {
+    private View createViewByPrefix(Context context, String name, String prefix, Object[] constructorArgs)
+            throws InflateException {
+        final String className = prefix != null ? (prefix + name) : name;
+        ClassLookupCache cache = getClassLookupCache(context.getClassLoader());
+        Constructor<? extends View> constructor = cache.getConstructor(className);
+
+        if (constructor == null) {
+            if (cache.misses.contains(className)) {
+                return null;
+            }
+            try {
                 // Class not found in the cache, see if it's real, and try to add it
                 Class<? extends View> clazz = Class.forName(
-                        prefix != null ? (prefix + name) : name,
+                        className,
                         false,
                         context.getClassLoader()).asSubclass(View.class);
 
                 constructor = clazz.getConstructor(sConstructorSignature);
-                sConstructorMap.put(name, constructor);
+                constructor.setAccessible(true);
+                cache.putConstructor(className, constructor);
+            } catch (ClassNotFoundException | NoSuchMethodException | ClassCastException e) {
+                // Remember the miss, so the next inflation skips the failed class load.
+                cache.misses.add(className);
+                return null;
             }
-            constructor.setAccessible(true);
-            return constructor.newInstance(mConstructorArgs);
+        }
+        try {
+            return constructor.newInstance(constructorArgs);
         } catch (Exception e) {
             // We do not want to catch these, lets return null and let the actual LayoutInflater
             // try
@@ -127,6 +164,66 @@ public class SkinCompatViewInflater {
         }
     }
 
+    @NonNull
+    private static ClassLookupCache getClassLookupCache(@Nullable ClassLoader classLoader) {
+        if (classLoader == null) {
+            return sBootClassLookupCache;
+        }
+        if (classLoader == SkinCompatViewInflater.class.getClassLoader()) {
+            return sAppClassLookupCache;
+        }
+        synchronized (sClassLookupCaches) {
+            ClassLookupCache cache = sClassLookupCaches.get(classLoader);
+            if (cache == null) {
+                cache = new ClassLookupCache(true);
+                sClassLookupCaches.put(classLoader, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Class lookups of one {@link ClassLoader}, keyed by fully qualified class name.
+     */
+    private static final class ClassLookupCache {
+        /**
+         * Constructors of a loader that may be unloaded are held weakly: a constructor references
+         * its class and so the loader, which would otherwise never leave the weak-keyed map.
+         */
+        private final ConcurrentHashMap<String, Constructor<? extends View>> mConstructors;
+        private final ConcurrentHashMap<String, WeakReference<Constructor<? extends View>>> mWeakConstructors;
+        /**
+         * Class names that do not exist or cannot be created from layout attributes.
+         */
+        final Set<String> misses = ConcurrentHashMap.newKeySet();
+        /**
+         * Prefix each bare tag name resolved to, or {@link #NO_PREFIX}.
+         */
+        final ConcurrentHashMap<String, String> resolvedPrefixes = new ConcurrentHashMap<>();
+
+        ClassLookupCache(boolean weakConstructors) {
+            mConstructors = weakConstructors ? null : new ConcurrentHashMap<>();
+            mWeakConstructors = weakConstructors ? new ConcurrentHashMap<>() : null;
+        }
+
+        @Nullable
+        Constructor<? extends View> getConstructor(String className) {
+            if (mConstructors != null) {
+                return mConstructors.get(className);
+            }
+            WeakReference<Constructor<? extends View>> ref = mWeakConstructors.get(className);
+            return ref != null ? ref.get() : null;
+        }
+
+        void putConstructor(String className, Constructor<? extends View> constructor) {
+            if (mConstructors != null) {
+                mConstructors.put(className, constructor);
+            } else {
+                mWeakConstructors.put(className, new WeakReference<>(constructor));
+            }
+        }
+    }
+
     /**
      * android:onClick doesn't handle views with a ContextWrapper context. This method
      * backports new framework functionality to traverse the Context wrappers to find a
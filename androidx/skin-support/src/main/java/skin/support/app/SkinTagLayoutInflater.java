@@ -0,0 +1,16 @@
+package skin.support.app;
+
+import skin.support.annotation.NonNull;
+
+/**
+ * A {@link SkinLayoutInflater} that declares the tag names it handles. Declared inflaters are only
+ * consulted for their own tags, which lets {@link skin.support.SkinCompatManager} resolve the
+ * inflater for a tag with a single hash lookup instead of trying every registered inflater.
+ */
+public interface SkinTagLayoutInflater extends SkinLayoutInflater {
+    /**
+     * @return The tag names, as written in layout XML, for which this inflater may create a view.
+     */
+    @NonNull
+    String[] getSupportedTags();
+}
@@ -0,0 +1,218 @@
+package skin.support.app;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import skin.support.SkinCompatManager;
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+import skin.support.utils.Slog;
+import skin.support.view.LayoutInflaterCompat;
+import skin.support.widget.SkinCompatSupportable;
+
+/**
+ * A pool of skinnable layouts inflated ahead of time on a background thread.
+ * <p>
+ * Register the expensive layouts of a screen with {@link #prefetch(int, int, ViewGroup)}; they are
+ * inflated off the main thread through the skin factory, so the current skin is applied while
+ * inflating. {@link #acquire(int, ViewGroup)} hands out a pooled view, or inflates one on the spot
+ * when the pool is empty, and tops the pool up again in the background. Views pooled before a skin
+ * switch are re-skinned when they are handed out.
+ * <p>
+ * A pool holds its context, usually an activity; call {@link #release()} when the context is
+ * destroyed. Like any background inflation, layouts whose views need a {@link Looper} in their
+ * constructor cannot be pre-inflated. {@link #acquire(int, ViewGroup)} must be called on the main thread.
+ */
+public final class SkinViewPool {
+    private static final String TAG = "SkinViewPool";
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private final Object mLock = new Object();
+    /**
+     * LayoutInflater#inflate holds a lock of its inflater for the whole inflation, so the main
+     * thread and the background thread each get their own, and {@link #acquire(int, ViewGroup)}
+     * never waits for a pre-inflation in progress.
+     */
+    private final LayoutInflater mInflater;
+    private final LayoutInflater mBackgroundInflater;
+    private final SparseArray<ArrayDeque<PooledView>> mPool = new SparseArray<>();
+    private final SparseIntArray mTargetCounts = new SparseIntArray();
+    private final SparseArray<ViewGroup> mParents = new SparseArray<>();
+    private final SparseIntArray mScheduledCounts = new SparseIntArray();
+    private boolean mReleased;
+
+    public SkinViewPool(@NonNull Context context) {
+        LayoutInflater inflater = LayoutInflater.from(context);
+        mInflater = inflater.cloneInContext(context);
+        mBackgroundInflater = inflater.cloneInContext(context);
+        if (inflater.getFactory2() == null) {
+            // The context has no skin factory of its own, e.g. an application or service context.
+            SkinCompatDelegate delegate = SkinCompatDelegate.create(context);
+            LayoutInflaterCompat.setFactory2(mInflater, delegate);
+            LayoutInflaterCompat.setFactory2(mBackgroundInflater, delegate);
+        }
+    }
+
+    /**
+     * Keeps {@code count} instances of a layout ready. Missing instances are inflated in the background.
+     *
+     * @param layoutResId The layout to pre-inflate.
+     * @param count       The number of instances to keep in the pool.
+     * @param parent      Optional parent used only to generate layout params, as with
+     *                    {@link LayoutInflater#inflate(int, ViewGroup, boolean)} with attachToRoot false.
+     */
+    public void prefetch(int layoutResId, int count, @Nullable ViewGroup parent) {
+        synchronized (mLock) {
+            if (mReleased) {
+                return;
+            }
+            mTargetCounts.put(layoutResId, Math.max(count, 0));
+            mParents.put(layoutResId, parent);
+        }
+        refill(layoutResId);
+    }
+
+    /**
+     * Hands out an instance of the layout, skinned with the current skin.
+     *
+     * @param layoutResId The layout to obtain.
+     * @param parent      Parent used to generate layout params when the pool is empty; not attached to.
+     * @return A view that is not attached to any parent.
+     */
+    @NonNull
+    public View acquire(int layoutResId, @Nullable ViewGroup parent) {
+        PooledView pooled;
+        synchronized (mLock) {
+            ArrayDeque<PooledView> views = mPool.get(layoutResId);
+            pooled = views != null ? views.pollFirst() : null;
+        }
+        View view;
+        if (pooled == null) {
+            view = mInflater.inflate(layoutResId, parent, false);
+        } else {
+            view = pooled.view;
+            if (pooled.generation != SkinCompatManager.getInstance().getSkinGeneration()) {
+                // The skin changed while the view was waiting in the pool.
+                applySkin(view);
+            }
+        }
+        refill(layoutResId);
+        return view;
+    }
+
+    /**
+     * @return The number of instances of the layout that are ready to be handed out.
+     */
+    public int getPooledCount(int layoutResId) {
+        synchronized (mLock) {
+            ArrayDeque<PooledView> views = mPool.get(layoutResId);
+            return views != null ? views.size() : 0;
+        }
+    }
+
+    /**
+     * Drops all pooled views and stops pre-inflating. The pool can not be used afterwards.
+     */
+    public void release() {
+        synchronized (mLock) {
+            mReleased = true;
+            mPool.clear();
+            mTargetCounts.clear();
+            mParents.clear();
+        }
+    }
+
+    private void refill(final int layoutResId) {
+        int missing;
+        synchronized (mLock) {
+            if (mReleased) {
+                return;
+            }
+            ArrayDeque<PooledView> views = mPool.get(layoutResId);
+            int pooled = views != null ? views.size() : 0;
+            int scheduled = mScheduledCounts.get(layoutResId);
+            missing = mTargetCounts.get(layoutResId) - pooled - scheduled;
+            if (missing <= 0) {
+                return;
+            }
+            mScheduledCounts.put(layoutResId, scheduled + missing);
+        }
+        for (int i = 0; i < missing; i++) {
+            sExecutor.execute(() -> inflateInBackground(layoutResId));
+        }
+    }
+
+    private void inflateInBackground(int layoutResId) {
+        ViewGroup parent;
+        synchronized (mLock) {
+            mScheduledCounts.put(layoutResId, mScheduledCounts.get(layoutResId) - 1);
+            if (mReleased || mTargetCounts.get(layoutResId) <= getPooledCount(layoutResId)) {
+                return;
+            }
+            parent = mParents.get(layoutResId);
+        }
+        int generation = SkinCompatManager.getInstance().getSkinGeneration();
+        View view;
+        try {
+            view = mBackgroundInflater.inflate(layoutResId, parent, false);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to pre-inflate layout 0x" + Integer.toHexString(layoutResId)
+                    + ", it will be inflated on demand", e);
+            synchronized (mLock) {
+                mTargetCounts.delete(layoutResId);
+            }
+            return;
+        }
+        synchronized (mLock) {
+            if (mReleased) {
+                return;
+            }
+            ArrayDeque<PooledView> views = mPool.get(layoutResId);
+            if (views == null) {
+                views = new ArrayDeque<>();
+                mPool.put(layoutResId, views);
+            }
+            views.addLast(new PooledView(view, generation));
+        }
+        if (Slog.DEBUG) {
+            Slog.i(TAG, "Pre-inflated layout 0x" + Integer.toHexString(layoutResId));
+        }
+    }
+
+    private static void applySkin(View view) {
+        if (view instanceof SkinCompatSupportable) {
+            ((SkinCompatSupportable) view).applySkin();
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                applySkin(group.getChildAt(i));
+            }
+        }
+    }
+
+    private static final class PooledView {
+        final View view;
+        final int generation;
+
+        PooledView(View view, int generation) {
+            this.view = view;
+            this.generation = generation;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import skin.support.annotation.ColorRes;
@@ -17,6 +18,22 @@ import skin.support.utils.Slog;
 
 public final class ColorState {
     private static final String TAG = "ColorState";
+    private static final long UNRESOLVED = Long.MAX_VALUE;
+    private static final int[][] STATE_SETS = {
+            SkinCompatThemeUtils.WINDOW_FOCUSED_STATE_SET,
+            SkinCompatThemeUtils.SELECTED_STATE_SET,
+            SkinCompatThemeUtils.FOCUSED_STATE_SET,
+            SkinCompatThemeUtils.ENABLED_STATE_SET,
+            SkinCompatThemeUtils.PRESSED_STATE_SET,
+            SkinCompatThemeUtils.CHECKED_STATE_SET,
+            SkinCompatThemeUtils.ACTIVATED_STATE_SET,
+            SkinCompatThemeUtils.ACCELERATED_STATE_SET,
+            SkinCompatThemeUtils.HOVERED_STATE_SET,
+            SkinCompatThemeUtils.DRAG_CAN_ACCEPT_STATE_SET,
+            SkinCompatThemeUtils.DRAG_HOVERED_STATE_SET,
+            SkinCompatThemeUtils.EMPTY_STATE_SET
+    };
+    private static final int DEFAULT_INDEX = STATE_SETS.length - 1;
     boolean onlyDefaultColor;
     String colorName;
     String colorWindowFocused;
@@ -32,6 +49,14 @@ public final class ColorState {
     String colorDragHovered;
     String colorDefault;
 
+    private boolean compiled;
+    private int compiledDefaultColor;
+    private boolean hasCompiledDefaultColor;
+    /**
+     * Read by views inflated on background threads, so published last.
+     */
+    private volatile ColorStateList compiledColorStateList;
+
     ColorState(String colorWindowFocused, String colorSelected, String colorFocused,
                String colorEnabled, String colorPressed, String colorChecked, String colorActivated,
                String colorAccelerated, String colorHovered, String colorDragCanAccept,
@@ -131,191 +156,107 @@ public final class ColorState {
         return colorDefault;
     }
 
-    ColorStateList parse() {
-        if (onlyDefaultColor) {
-            int defaultColor = Color.parseColor(colorDefault);
-            return ColorStateList.valueOf(defaultColor);
+    /**
+     * @return The names of the user colors this state refers to, in declaration order.
+     */
+    List<String> getReferences() {
+        List<String> references = new ArrayList<>(1);
+        for (String value : values()) {
+            if (!TextUtils.isEmpty(value) && !value.startsWith("#")) {
+                references.add(value);
+            }
         }
-        return parseAll();
+        return references;
     }
 
-    private ColorStateList parseAll() {
-        int stateColorCount = 0;
-        List<int[]> stateSetList = new ArrayList<>();
-        List<Integer> stateColorList = new ArrayList<>();
-        if (!TextUtils.isEmpty(colorWindowFocused)) {
-            try {
-                String windowFocusedColorStr = getColorStr(colorWindowFocused);
-                if (!TextUtils.isEmpty(windowFocusedColorStr)) {
-                    int windowFocusedColorInt = Color.parseColor(windowFocusedColorStr);
-                    stateSetList.add(SkinCompatThemeUtils.WINDOW_FOCUSED_STATE_SET);
-                    stateColorList.add(windowFocusedColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
-        }
-        if (!TextUtils.isEmpty(colorSelected)) {
-            try {
-                String colorSelectedStr = getColorStr(colorSelected);
-                if (!TextUtils.isEmpty(colorSelectedStr)) {
-                    int selectedColorInt = Color.parseColor(colorSelectedStr);
-                    stateSetList.add(SkinCompatThemeUtils.SELECTED_STATE_SET);
-                    stateColorList.add(selectedColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
-        }
-        if (!TextUtils.isEmpty(colorFocused)) {
-            try {
-                String colorFocusedStr = getColorStr(colorFocused);
-                if (!TextUtils.isEmpty(colorFocusedStr)) {
-                    int focusedColorInt = Color.parseColor(colorFocusedStr);
-                    stateSetList.add(SkinCompatThemeUtils.FOCUSED_STATE_SET);
-                    stateColorList.add(focusedColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
-        }
-        if (!TextUtils.isEmpty(colorEnabled)) {
-            try {
-                String colorEnabledStr = getColorStr(colorEnabled);
-                if (!TextUtils.isEmpty(colorEnabledStr)) {
-                    int enabledColorInt = Color.parseColor(colorEnabledStr);
-                    stateSetList.add(SkinCompatThemeUtils.ENABLED_STATE_SET);
-                    stateColorList.add(enabledColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
-        }
-        if (!TextUtils.isEmpty(colorPressed)) {
-            try {
-                String colorPressedStr = getColorStr(colorPressed);
-                if (!TextUtils.isEmpty(colorPressedStr)) {
-                    int pressedColorInt = Color.parseColor(colorPressedStr);
-                    stateSetList.add(SkinCompatThemeUtils.PRESSED_STATE_SET);
-                    stateColorList.add(pressedColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
-        }
-        if (!TextUtils.isEmpty(colorChecked)) {
-            try {
-                String colorCheckedStr = getColorStr(colorChecked);
-                if (!TextUtils.isEmpty(colorCheckedStr)) {
-                    int checkedColorInt = Color.parseColor(colorCheckedStr);
-                    stateSetList.add(SkinCompatThemeUtils.CHECKED_STATE_SET);
-                    stateColorList.add(checkedColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
+    boolean isCompiled() {
+        return compiled;
+    }
+
+    void invalidate() {
+        compiled = false;
+        compiledColorStateList = null;
+    }
+
+    /**
+     * Resolves the colors of this state into primitive state sets and colors. Referenced colors
+     * resolve to their default color and must have been compiled before.
+     *
+     * @return false if the default color cannot be parsed.
+     */
+    boolean compile(Resolver resolver) {
+        String[] values = values();
+        int[][] states = new int[values.length][];
+        int[] colors = new int[values.length];
+        int count = 0;
+        hasCompiledDefaultColor = false;
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i];
+            if (TextUtils.isEmpty(value)) {
+                continue;
             }
-        }
-        if (!TextUtils.isEmpty(colorActivated)) {
-            try {
-                String colorActivatedStr = getColorStr(colorActivated);
-                if (!TextUtils.isEmpty(colorActivatedStr)) {
-                    int activatedColorInt = Color.parseColor(colorActivatedStr);
-                    stateSetList.add(SkinCompatThemeUtils.ACTIVATED_STATE_SET);
-                    stateColorList.add(activatedColorInt);
-                    stateColorCount++;
+            long color = resolveColor(value, resolver);
+            if (color == UNRESOLVED) {
+                if (i == DEFAULT_INDEX && value.startsWith("#")) {
+                    if (Slog.DEBUG) {
+                        Slog.i(TAG, colorName + " parse failure.");
+                    }
+                    return false;
                 }
-            } catch (Exception e) {
+                continue;
             }
-        }
-        if (!TextUtils.isEmpty(colorAccelerated)) {
-            try {
-                String colorAcceleratedStr = getColorStr(colorAccelerated);
-                if (!TextUtils.isEmpty(colorAcceleratedStr)) {
-                    int acceleratedColorInt = Color.parseColor(colorAcceleratedStr);
-                    stateSetList.add(SkinCompatThemeUtils.ACCELERATED_STATE_SET);
-                    stateColorList.add(acceleratedColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
+            states[count] = STATE_SETS[i];
+            colors[count] = (int) color;
+            count++;
+            if (i == DEFAULT_INDEX) {
+                compiledDefaultColor = (int) color;
+                hasCompiledDefaultColor = true;
             }
         }
-        if (!TextUtils.isEmpty(colorHovered)) {
+        compiled = true;
+        compiledColorStateList = new ColorStateList(Arrays.copyOf(states, count), Arrays.copyOf(colors, count));
+        return true;
+    }
+
+    /**
+     * @return The compiled color state list, or null if this state is not compiled.
+     */
+    ColorStateList toColorStateList() {
+        return compiledColorStateList;
+    }
+
+    private long resolveColor(String value, Resolver resolver) {
+        if (value.startsWith("#")) {
             try {
-                String colorHoveredStr = getColorStr(colorHovered);
-                if (!TextUtils.isEmpty(colorHoveredStr)) {
-                    int hoveredColorInt = Color.parseColor(colorHoveredStr);
-                    stateSetList.add(SkinCompatThemeUtils.HOVERED_STATE_SET);
-                    stateColorList.add(hoveredColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
+                return Color.parseColor(value);
+            } catch (IllegalArgumentException e) {
+                return UNRESOLVED;
             }
         }
-        if (!TextUtils.isEmpty(colorDragCanAccept)) {
-            try {
-                String colorDragCanAcceptStr = getColorStr(colorDragCanAccept);
-                if (!TextUtils.isEmpty(colorDragCanAcceptStr)) {
-                    int dragCanAcceptColorInt = Color.parseColor(colorDragCanAcceptStr);
-                    stateSetList.add(SkinCompatThemeUtils.DRAG_CAN_ACCEPT_STATE_SET);
-                    stateColorList.add(dragCanAcceptColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
+        ColorState ref = resolver.getColorState(value);
+        if (ref != null && ref.compiled && ref.hasCompiledDefaultColor) {
+            return ref.compiledDefaultColor;
         }
-        if (!TextUtils.isEmpty(colorDragHovered)) {
-            try {
-                String colorDragHoveredStr = getColorStr(colorDragHovered);
-                if (!TextUtils.isEmpty(colorDragHoveredStr)) {
-                    int dragHoveredColorInt = Color.parseColor(colorDragHoveredStr);
-                    stateSetList.add(SkinCompatThemeUtils.DRAG_HOVERED_STATE_SET);
-                    stateColorList.add(dragHoveredColorInt);
-                    stateColorCount++;
-                }
-            } catch (Exception e) {
-            }
+        if (Slog.DEBUG) {
+            Slog.i(TAG, colorName + " cannot reference " + value);
         }
-        try {
-            String colorDefaultStr = getColorStr(colorDefault);
-            if (!TextUtils.isEmpty(colorDefaultStr)) {
-                int baseColor = Color.parseColor(colorDefaultStr);
-                stateSetList.add(SkinCompatThemeUtils.EMPTY_STATE_SET);
-                stateColorList.add(baseColor);
-                stateColorCount++;
-            }
+        return UNRESOLVED;
+    }
 
-            final int[][] states = new int[stateColorCount][];
-            final int[] colors = new int[stateColorCount];
-            for (int index = 0; index < stateColorCount; index++) {
-                states[index] = stateSetList.get(index);
-                colors[index] = stateColorList.get(index);
-            }
-            return new ColorStateList(states, colors);
-        } catch (Exception e) {
-            if (Slog.DEBUG) {
-                Slog.i(TAG, colorName + " parse failure.");
-            }
-            SkinCompatUserThemeManager.get().removeColorState(colorName);
-            return null;
-        }
+    /**
+     * The colors in the order of {@link #STATE_SETS}.
+     */
+    private String[] values() {
+        return new String[]{colorWindowFocused, colorSelected, colorFocused, colorEnabled,
+                colorPressed, colorChecked, colorActivated, colorAccelerated, colorHovered,
+                colorDragCanAccept, colorDragHovered, colorDefault};
     }
 
-    private String getColorStr(String colorName) {
-        if (colorName.startsWith("#")) {
-            return colorName;
-        } else {
-            ColorState stateRef = SkinCompatUserThemeManager.get().getColorState(colorName);
-            if (stateRef != null) {
-                if (stateRef.isOnlyDefaultColor()) {
-                    return stateRef.colorDefault;
-                } else {
-                    if (Slog.DEBUG) {
-                        Slog.i(TAG, colorName + " cannot reference " + stateRef.colorName);
-                    }
-                }
-            }
-        }
-        return null;
+    /**
+     * Looks up the user color a state refers to by name.
+     */
+    interface Resolver {
+        ColorState getColorState(String colorName);
     }
 
     static boolean checkColorValid(String name, String color) {
@@ -0,0 +1,98 @@
+package skin.support.content.res;
+
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+
+/**
+ * An image file that replaces a drawable resource in the user theme.
+ * <p>
+ * The file is checked and its header decoded once, when the override is added, so looking the
+ * override up or decoding it later needs neither string parsing nor file system checks.
+ */
+public final class DrawableOverride {
+    String drawableName;
+    final String path;
+    final int angle;
+    final long fileSize;
+    final long lastModified;
+    final int width;
+    final int height;
+
+    DrawableOverride(String drawableName, String path, int angle,
+                     long fileSize, long lastModified, int width, int height) {
+        this.drawableName = drawableName;
+        this.path = path;
+        this.angle = angle;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Reads the size, modification time and dimensions of an existing image file.
+     */
+    static DrawableOverride resolve(String drawableName, String path, int angle) {
+        File file = new File(path);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        return new DrawableOverride(drawableName, path, angle,
+                file.length(), file.lastModified(), options.outWidth, options.outHeight);
+    }
+
+    /**
+     * Parses the {@code path:angle} encoding used by previous versions. The angle is split off at
+     * the last colon, so paths containing colons are kept whole.
+     */
+    static DrawableOverride fromPathAndAngle(String drawableName, String pathAndAngle) {
+        int separator = pathAndAngle.lastIndexOf(':');
+        if (separator > 0) {
+            try {
+                int angle = Integer.parseInt(pathAndAngle.substring(separator + 1));
+                return resolve(drawableName, pathAndAngle.substring(0, separator), angle);
+            } catch (NumberFormatException e) {
+                // No angle, the colon belongs to the path.
+            }
+        }
+        return resolve(drawableName, pathAndAngle, 0);
+    }
+
+    public String getDrawableName() {
+        return drawableName;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return The clockwise rotation applied to the image, in degrees.
+     */
+    public int getAngle() {
+        return angle;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return The width of the image file before rotation, or -1 if it could not be decoded.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the image file before rotation, or -1 if it could not be decoded.
+     */
+    public int getHeight() {
+        return height;
+    }
+}
@@ -60,6 +60,7 @@ public class SkinCompatResources {
         mSkinName = "";
         mStrategy = strategy;
         isDefaultSkin = true;
+        SkinCompatManager.getInstance().nextSkinGeneration();
         SkinCompatUserThemeManager.get().clearCaches();
         for (SkinResources skinResources : mSkinResources) {
             skinResources.clear();
@@ -76,6 +77,7 @@ public class SkinCompatResources {
         mSkinName = skinName;
         mStrategy = strategy;
         isDefaultSkin = false;
+        SkinCompatManager.getInstance().nextSkinGeneration();
         SkinCompatUserThemeManager.get().clearCaches();
         synchronized (mSkinResources) {
             for (SkinResources skinResources : mSkinResources) {
@@ -1,33 +1,52 @@
 package skin.support.content.res;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.ColorStateList;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.graphics.drawable.BitmapDrawable;
+import android.content.res.Configuration;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
-import android.util.LongSparseArray;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+import androidx.annotation.ColorInt;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.lang.ref.WeakReference;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.WeakHashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import skin.support.SkinCompatManager;
+import skin.support.SkinMultiProcessChannel;
 import skin.support.annotation.ColorRes;
 import skin.support.annotation.DrawableRes;
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
 import skin.support.utils.ImageUtils;
 import skin.support.utils.SkinPreference;
 import skin.support.utils.Slog;
 
 import static skin.support.content.res.ColorState.checkColorValid;
-import static skin.support.content.res.ColorState.toJSONObject;
 
 public class SkinCompatUserThemeManager {
     private static final String TAG = "SkinCompatUserThemeManager";
@@ -37,101 +56,379 @@ public class SkinCompatUserThemeManager {
     private static final String KEY_DRAWABLE_NAME = "drawableName";
     private static final String KEY_DRAWABLE_PATH_AND_ANGLE = "drawablePathAndAngle";
 
+    private static final String STORE_DIR_NAME = "skin-support";
+    private static final String STORE_FILE_NAME = "user-theme";
+    /**
+     * Superseded records tolerated in the store before it is compacted.
+     */
+    private static final int COMPACT_SLACK = 32;
+    /**
+     * Decoded user theme images may use up to 1/8 of the app's memory class.
+     */
+    private static final int DRAWABLE_CACHE_MEMORY_FRACTION = 8;
+    private static final int DEFAULT_MEMORY_CLASS = 64;
+    private static final long SAVE_DELAY_MS = 200;
+    private static final long SAVE_MAX_DELAY_MS = 1000;
+    private static final int PALETTE_CACHE_SIZE = 8;
+
+    /**
+     * Writes and reloads the store. Kept apart from {@link #sProbeExecutor}, so slow file probes
+     * never delay a debounced save past {@link #SAVE_MAX_DELAY_MS}.
+     */
+    private static final ScheduledExecutorService sSaveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, TAG + "-save");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    /**
+     * Checks the files given to {@link #addDrawablePathAsync}.
+     */
+    private static final ExecutorService sProbeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG + "-probe");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
     private static final SkinCompatUserThemeManager INSTANCE = new SkinCompatUserThemeManager();
 
+    private final SkinUserThemeStore mStore;
+    private final List<SkinUserThemeStore.Record> mPendingRecords = new ArrayList<>();
+    private final Object mSaveLock = new Object();
+    private final List<SkinUserThemeStore.Record> mUnsavedRecords = new ArrayList<>();
+    private int mUnsavedLiveCount;
+    private long mFirstUnsavedTime;
+    private ScheduledFuture<?> mSaveFuture;
+
+    /**
+     * Guards the user colors and drawables and their dependency graph. Edits happen on the main
+     * thread, but views inflated on a background thread look colors and drawables up concurrently.
+     */
+    private final Object mThemeLock = new Object();
     private final HashMap<String, ColorState> mColorNameStateMap = new HashMap<>();
+    /**
+     * Color name -> names of the user colors referring to it.
+     */
+    private final HashMap<String, HashSet<String>> mColorDependents = new HashMap<>();
+    /**
+     * Colors whose compiled state is out of date.
+     */
+    private final HashSet<String> mDirtyColors = new HashSet<>();
     private final Object mColorCacheLock = new Object();
-    private final WeakHashMap<Integer, WeakReference<ColorStateList>> mColorCaches = new WeakHashMap<>();
-    private boolean mColorEmpty;
+    private final SparseArray<ColorStateList> mColorCaches = new SparseArray<>();
+    private volatile boolean mColorEmpty;
 
-    private final HashMap<String, String> mDrawablePathAndAngleMap = new HashMap<>();
+    private final HashMap<String, DrawableOverride> mDrawableOverrideMap = new HashMap<>();
     private final Object mDrawableCacheLock = new Object();
-    private final LongSparseArray<Drawable> mDrawableCaches = new LongSparseArray<>(20);
-    private boolean mDrawableEmpty;
+    private final SkinDrawableStateCache mDrawableCaches;
+    private volatile boolean mDrawableEmpty;
+    private int mMaxDecodeSize;
+    private int mDrawablePlaceholderColor = Color.TRANSPARENT;
+
+    /**
+     * Palettes by seed color and dark mode, see {@link #paletteKey(int, boolean)}.
+     */
+    private final LruCache<Long, SkinTonalPalette> mPaletteCache = new LruCache<>(PALETTE_CACHE_SIZE);
+
+    /**
+     * Resource id <-> entry name index of the app's color and drawable resources, filled as ids are
+     * looked up. An empty name marks an id of another type.
+     */
+    private final Object mEntryNameLock = new Object();
+    private final SparseArray<String> mColorEntryNames = new SparseArray<>();
+    private final SparseArray<String> mDrawableEntryNames = new SparseArray<>();
+    private final HashMap<String, Integer> mColorResIds = new HashMap<>();
 
     private SkinCompatUserThemeManager() {
+        Context context = SkinCompatManager.getInstance().getContext();
+        File dir = new File(context.getFilesDir(), STORE_DIR_NAME);
+        mStore = new SkinUserThemeStore(new File(dir, STORE_FILE_NAME));
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = am != null ? am.getMemoryClass() : DEFAULT_MEMORY_CLASS;
+        mDrawableCaches = new SkinDrawableStateCache(memoryClass * 1024 * 1024 / DRAWABLE_CACHE_MEMORY_FRACTION);
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(TRIM_MEMORY_COMPLETE);
+            }
+        });
+        load();
+    }
+
+    /**
+     * Reads the store, then replaces the user theme in memory. The file is read without holding
+     * the theme lock, so background lookups never wait for disk I/O.
+     */
+    private void load() {
+        HashMap<String, ColorState> colors = new HashMap<>();
+        HashMap<String, DrawableOverride> drawables = new HashMap<>();
+        if (mStore.exists()) {
+            try {
+                mStore.load(colors, drawables);
+            } catch (IOException e) {
+                colors.clear();
+                drawables.clear();
+                Log.e(TAG, "Failed to load user theme", e);
+            }
+        } else {
+            migrateFromSharedPreferences(colors, drawables);
+        }
+        synchronized (mThemeLock) {
+            mColorNameStateMap.clear();
+            mColorNameStateMap.putAll(colors);
+            mDrawableOverrideMap.clear();
+            mDrawableOverrideMap.putAll(drawables);
+            mColorDependents.clear();
+            mDirtyColors.clear();
+            for (ColorState state : mColorNameStateMap.values()) {
+                linkColor(state);
+            }
+            mDirtyColors.addAll(mColorNameStateMap.keySet());
+            compileDirtyColors();
+            mColorEmpty = mColorNameStateMap.isEmpty();
+            mDrawableEmpty = mDrawableOverrideMap.isEmpty();
+        }
+    }
+
+    /**
+     * Moves a user theme saved as JSON by a previous version into the store.
+     */
+    private void migrateFromSharedPreferences(HashMap<String, ColorState> colors,
+                                              HashMap<String, DrawableOverride> drawables) {
+        String json = SkinPreference.getInstance().getUserTheme();
+        if (TextUtils.isEmpty(json)) {
+            return;
+        }
         try {
-            startLoadFromSharedPreferences();
+            startLoadFromJson(json, colors, drawables);
         } catch (JSONException e) {
-            mColorNameStateMap.clear();
-            mDrawablePathAndAngleMap.clear();
+            colors.clear();
+            drawables.clear();
             if (Slog.DEBUG) {
-                Slog.i(TAG, "startLoadFromSharedPreferences error: " + e);
+                Slog.i(TAG, "startLoadFromJson error: " + e);
             }
         }
+        try {
+            mStore.compact(colors, drawables);
+            SkinPreference.getInstance().setUserTheme("").commitEditor();
+        } catch (IOException e) {
+            // Keep the JSON so the migration is retried next time.
+            Log.e(TAG, "Failed to migrate user theme", e);
+        }
     }
 
-    private void startLoadFromSharedPreferences() throws JSONException {
-        String colors = SkinPreference.getInstance().getUserTheme();
-        if (!TextUtils.isEmpty(colors)) {
-            JSONArray jsonArray = new JSONArray(colors);
-            if (Slog.DEBUG) {
-                Slog.i(TAG, "startLoadFromSharedPreferences: " + jsonArray.toString());
-            }
-            int count = jsonArray.length();
-            for (int i = 0; i < count; i++) {
-                JSONObject jsonObject = jsonArray.getJSONObject(i);
-                if (jsonObject.has(KEY_TYPE)) {
-                    String type = jsonObject.getString(KEY_TYPE);
-                    if (KEY_TYPE_COLOR.equals(type)) {
-                        ColorState state = ColorState.fromJSONObject(jsonObject);
-                        if (state != null) {
-                            mColorNameStateMap.put(state.colorName, state);
-                        }
-                    } else if (KEY_TYPE_DRAWABLE.equals(type)) {
-                        String drawableName = jsonObject.getString(KEY_DRAWABLE_NAME);
-                        String drawablePathAndAngle = jsonObject.getString(KEY_DRAWABLE_PATH_AND_ANGLE);
-                        if (!TextUtils.isEmpty(drawableName) && !TextUtils.isEmpty(drawablePathAndAngle)) {
-                            mDrawablePathAndAngleMap.put(drawableName, drawablePathAndAngle);
-                        }
+    static void startLoadFromJson(String json, HashMap<String, ColorState> colors,
+                                  HashMap<String, DrawableOverride> drawables) throws JSONException {
+        JSONArray jsonArray = new JSONArray(json);
+        if (Slog.DEBUG) {
+            Slog.i(TAG, "startLoadFromJson: " + jsonArray.toString());
+        }
+        int count = jsonArray.length();
+        for (int i = 0; i < count; i++) {
+            JSONObject jsonObject = jsonArray.getJSONObject(i);
+            if (jsonObject.has(KEY_TYPE)) {
+                String type = jsonObject.getString(KEY_TYPE);
+                if (KEY_TYPE_COLOR.equals(type)) {
+                    ColorState state = ColorState.fromJSONObject(jsonObject);
+                    if (state != null) {
+                        colors.put(state.colorName, state);
+                    }
+                } else if (KEY_TYPE_DRAWABLE.equals(type)) {
+                    String drawableName = jsonObject.getString(KEY_DRAWABLE_NAME);
+                    String drawablePathAndAngle = jsonObject.getString(KEY_DRAWABLE_PATH_AND_ANGLE);
+                    if (!TextUtils.isEmpty(drawableName) && !TextUtils.isEmpty(drawablePathAndAngle)) {
+                        drawables.put(drawableName,
+                                DrawableOverride.fromPathAndAngle(drawableName, drawablePathAndAngle));
                     }
                 }
             }
         }
-        mColorEmpty = mColorNameStateMap.isEmpty();
-        mDrawableEmpty = mDrawablePathAndAngleMap.isEmpty();
     }
 
+    /**
+     * Applies the edits made since the last call: observers are notified right away, and the
+     * edits are saved on a background thread. Saving is debounced, so a burst of applies, e.g.
+     * from a color slider, is written once.
+     */
     public void apply() {
-        JSONArray jsonArray = new JSONArray();
-        for (String colorName : mColorNameStateMap.keySet()) {
-            ColorState state = mColorNameStateMap.get(colorName);
-            if (state != null) {
-                try {
-                    jsonArray.put(toJSONObject(state).putOpt(KEY_TYPE, KEY_TYPE_COLOR));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+        apply(null, 0);
+    }
+
+    /**
+     * @param change        The resources changed by the last {@code changeRecords} pending records.
+     *                      Observers get null instead if other edits are flushed with them, as
+     *                      those did not say which resources they touch.
+     * @param changeRecords The number of pending records described by {@code change}.
+     */
+    private void apply(@Nullable SkinUserThemeChange change, int changeRecords) {
+        List<SkinUserThemeStore.Record> records;
+        synchronized (mPendingRecords) {
+            records = new ArrayList<>(mPendingRecords);
+            mPendingRecords.clear();
+        }
+        if (records.size() != changeRecords) {
+            change = null;
+        }
+        if (Slog.DEBUG) {
+            Slog.i(TAG, "Apply user theme: " + records.size() + " changes");
+        }
+        if (!records.isEmpty()) {
+            int liveCount;
+            synchronized (mThemeLock) {
+                liveCount = mColorNameStateMap.size() + mDrawableOverrideMap.size();
+            }
+            scheduleSave(records, liveCount);
+        }
+        SkinCompatManager.getInstance().notifyUpdateSkin(change);
+    }
+
+    private void scheduleSave(List<SkinUserThemeStore.Record> records, int liveCount) {
+        synchronized (mUnsavedRecords) {
+            mUnsavedRecords.addAll(records);
+            mUnsavedLiveCount = liveCount;
+            long now = SystemClock.uptimeMillis();
+            if (mSaveFuture == null) {
+                mFirstUnsavedTime = now;
+            } else {
+                mSaveFuture.cancel(false);
             }
+            // Wait for the burst to end, but not longer than SAVE_MAX_DELAY_MS.
+            long delay = Math.max(Math.min(SAVE_DELAY_MS, mFirstUnsavedTime + SAVE_MAX_DELAY_MS - now), 0);
+            mSaveFuture = sSaveExecutor.schedule(this::save, delay, TimeUnit.MILLISECONDS);
         }
-        for (String drawableName : mDrawablePathAndAngleMap.keySet()) {
-            JSONObject object = new JSONObject();
+    }
+
+    private void save() {
+        synchronized (mSaveLock) {
+            List<SkinUserThemeStore.Record> records;
+            int liveCount;
+            synchronized (mUnsavedRecords) {
+                if (mSaveFuture != null) {
+                    // Flushed early, e.g. by a reload.
+                    mSaveFuture.cancel(false);
+                    mSaveFuture = null;
+                }
+                if (mUnsavedRecords.isEmpty()) {
+                    return;
+                }
+                records = new ArrayList<>(mUnsavedRecords);
+                mUnsavedRecords.clear();
+                liveCount = mUnsavedLiveCount;
+            }
             try {
-                jsonArray.put(object.putOpt(KEY_TYPE, KEY_TYPE_DRAWABLE)
-                        .putOpt(KEY_DRAWABLE_NAME, drawableName)
-                        .putOpt(KEY_DRAWABLE_PATH_AND_ANGLE, mDrawablePathAndAngleMap.get(drawableName)));
-            } catch (JSONException e) {
-                e.printStackTrace();
+                mStore.append(records);
+                if (mStore.getRecordCount() > liveCount * 2 + COMPACT_SLACK) {
+                    mStore.compact();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save user theme", e);
+            }
+            if (Slog.DEBUG) {
+                Slog.i(TAG, "Saved user theme: " + records.size() + " changes");
+            }
+            SkinMultiProcessChannel channel = SkinCompatManager.getInstance().getMultiProcessChannel();
+            if (channel != null) {
+                channel.publishUserTheme();
             }
         }
-        if (Slog.DEBUG) {
-            Slog.i(TAG, "Apply user theme: " + jsonArray.toString());
+    }
+
+    /**
+     * Reloads the user theme from its store, e.g. after another process has changed it.
+     * Changes that have not been applied yet are dropped. Observers are not notified.
+     *
+     * @see #reload(Runnable)
+     */
+    public void reload() {
+        reload(null);
+    }
+
+    /**
+     * Reloads the user theme from its store on the background thread that saves it: a pending
+     * debounced save is flushed first, so applied changes are kept, then the store is read.
+     * Changes that have not been applied yet are dropped, and edits made while the reload is in
+     * flight are replaced by the reloaded theme. Observers are not notified.
+     *
+     * @param onReloaded Called on the main thread once the reloaded theme is in use.
+     */
+    public void reload(@Nullable Runnable onReloaded) {
+        synchronized (mPendingRecords) {
+            mPendingRecords.clear();
         }
-        SkinPreference.getInstance().setUserTheme(jsonArray.toString()).commitEditor();
-        SkinCompatManager.getInstance().notifyUpdateSkin();
+        sSaveExecutor.execute(() -> {
+            save();
+            load();
+            clearCaches();
+            if (onReloaded != null) {
+                sMainHandler.post(onReloaded);
+            }
+        });
     }
 
     public static SkinCompatUserThemeManager get() {
         return INSTANCE;
     }
 
+    /**
+     * Starts a batch of edits that are applied, saved and notified together by
+     * {@link Editor#commit()}.
+     */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Replaces the given colors with the roles of the tonal palette of a seed color, see
+     * {@link SkinTonalPalette}. The palette is computed on the calling thread, which takes a few
+     * hundred HSL conversions, or taken from a cache of recently used seeds, and committed as one batch.
+     * Everything, including {@link Editor#commit()}, runs synchronously before this method returns,
+     * so call it on the main thread like the other edits.
+     *
+     * @param seedColor The brand color picked by the user.
+     * @param dark      Whether to use the tones of the dark scheme.
+     * @param roles     Color resource id -> {@code SkinTonalPalette.ROLE_} constant.
+     * @param listener  Called once the colors are committed, before this method returns.
+     */
+    public void applySeedColor(@ColorInt int seedColor, boolean dark, @NonNull SparseIntArray roles,
+                               @Nullable OnSeedColorAppliedListener listener) {
+        long key = paletteKey(seedColor, dark);
+        SkinTonalPalette palette = mPaletteCache.get(key);
+        if (palette == null) {
+            palette = SkinTonalPalette.fromSeed(seedColor, dark);
+            mPaletteCache.put(key, palette);
+        }
+        Editor editor = edit();
+        for (int i = 0; i < roles.size(); i++) {
+            editor.addColorState(roles.keyAt(i), palette.createColorState(roles.valueAt(i)));
+        }
+        editor.commit();
+        if (listener != null) {
+            listener.onSeedColorApplied(palette);
+        }
+    }
+
+    private static long paletteKey(int seedColor, boolean dark) {
+        return (seedColor & 0xFFFFFFFFL) | (dark ? 1L << 32 : 0);
+    }
+
     public void addColorState(@ColorRes int colorRes, ColorState state) {
         String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
         if (!TextUtils.isEmpty(entry) && state != null) {
-            state.colorName = entry;
-            mColorNameStateMap.put(entry, state);
+            synchronized (mThemeLock) {
+                putColorState(entry, state);
+                compileDirtyColors();
+                mColorEmpty = false;
+            }
             removeColorInCache(colorRes);
-            mColorEmpty = false;
         }
     }
 
@@ -141,36 +438,156 @@ public class SkinCompatUserThemeManager {
         }
         String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
         if (!TextUtils.isEmpty(entry)) {
-            mColorNameStateMap.put(entry, new ColorState(entry, colorDefault));
+            synchronized (mThemeLock) {
+                putColorState(entry, new ColorState(entry, colorDefault));
+                compileDirtyColors();
+                mColorEmpty = false;
+            }
             removeColorInCache(colorRes);
-            mColorEmpty = false;
         }
     }
 
     public void removeColorState(@ColorRes int colorRes) {
         String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
         if (!TextUtils.isEmpty(entry)) {
-            mColorNameStateMap.remove(entry);
+            synchronized (mThemeLock) {
+                removeColorEntry(entry);
+                compileDirtyColors();
+                mColorEmpty = mColorNameStateMap.isEmpty();
+            }
             removeColorInCache(colorRes);
-            mColorEmpty = mColorNameStateMap.isEmpty();
         }
     }
 
+    // The helpers below are called with mThemeLock held.
+
+    private void putColorState(String entry, ColorState state) {
+        state.colorName = entry;
+        ColorState previous = mColorNameStateMap.put(entry, state);
+        if (previous != null) {
+            unlinkColor(previous);
+        }
+        linkColor(state);
+        markColorDirty(entry);
+        record(SkinUserThemeStore.Record.putColor(state));
+    }
+
+    private void removeColorEntry(String entry) {
+        ColorState previous = mColorNameStateMap.remove(entry);
+        if (previous != null) {
+            unlinkColor(previous);
+        }
+        markColorDirty(entry);
+        record(SkinUserThemeStore.Record.removeColor(entry));
+    }
+
+    private void linkColor(ColorState state) {
+        for (String reference : state.getReferences()) {
+            HashSet<String> dependents = mColorDependents.get(reference);
+            if (dependents == null) {
+                dependents = new HashSet<>();
+                mColorDependents.put(reference, dependents);
+            }
+            dependents.add(state.colorName);
+        }
+    }
+
+    private void unlinkColor(ColorState state) {
+        for (String reference : state.getReferences()) {
+            HashSet<String> dependents = mColorDependents.get(reference);
+            if (dependents != null) {
+                dependents.remove(state.colorName);
+                if (dependents.isEmpty()) {
+                    mColorDependents.remove(reference);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks a color and every color referring to it, directly or not, for recompilation.
+     */
+    private void markColorDirty(String colorName) {
+        if (!mDirtyColors.add(colorName)) {
+            // Already marked, together with its dependents; also ends reference cycles.
+            return;
+        }
+        ColorState state = mColorNameStateMap.get(colorName);
+        if (state != null) {
+            state.invalidate();
+        }
+        Integer colorRes;
+        synchronized (mEntryNameLock) {
+            colorRes = mColorResIds.get(colorName);
+        }
+        if (colorRes != null) {
+            synchronized (mColorCacheLock) {
+                mColorCaches.remove(colorRes);
+            }
+        }
+        HashSet<String> dependents = mColorDependents.get(colorName);
+        if (dependents != null) {
+            for (String dependent : new ArrayList<>(dependents)) {
+                markColorDirty(dependent);
+            }
+        }
+    }
+
+    private void compileDirtyColors() {
+        while (!mDirtyColors.isEmpty()) {
+            List<String> names = new ArrayList<>(mDirtyColors);
+            mDirtyColors.clear();
+            for (String name : names) {
+                compileColor(name, new HashSet<>());
+            }
+        }
+    }
+
+    /**
+     * Compiles a color after the colors it refers to.
+     *
+     * @param visiting The colors being compiled further up the reference chain.
+     */
+    private void compileColor(String colorName, HashSet<String> visiting) {
+        ColorState state = mColorNameStateMap.get(colorName);
+        if (state == null || state.isCompiled()) {
+            return;
+        }
+        if (!visiting.add(colorName)) {
+            Log.e(TAG, "Circular user color reference: " + visiting + " -> " + colorName);
+            return;
+        }
+        for (String reference : state.getReferences()) {
+            compileColor(reference, visiting);
+        }
+        visiting.remove(colorName);
+        if (!state.compile(mColorNameStateMap::get)) {
+            removeColorState(colorName);
+        }
+    }
+
+    /**
+     * Removes a color that cannot be compiled.
+     */
     void removeColorState(String colorName) {
         if (!TextUtils.isEmpty(colorName)) {
-            mColorNameStateMap.remove(colorName);
-            mColorEmpty = mColorNameStateMap.isEmpty();
+            synchronized (mThemeLock) {
+                removeColorEntry(colorName);
+                mColorEmpty = mColorNameStateMap.isEmpty();
+            }
         }
     }
 
     public ColorState getColorState(String colorName) {
-        return mColorNameStateMap.get(colorName);
+        synchronized (mThemeLock) {
+            return mColorNameStateMap.get(colorName);
+        }
     }
 
     public ColorState getColorState(@ColorRes int colorRes) {
         String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
         if (!TextUtils.isEmpty(entry)) {
-            return mColorNameStateMap.get(entry);
+            return getColorState(entry);
         }
         return null;
     }
@@ -180,11 +597,16 @@ public class SkinCompatUserThemeManager {
         if (colorStateList == null) {
             String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
             if (!TextUtils.isEmpty(entry)) {
-                ColorState state = mColorNameStateMap.get(entry);
-                if (state != null) {
-                    colorStateList = state.parse();
-                    if (colorStateList != null) {
-                        addColorToCache(colorRes, colorStateList);
+                synchronized (mThemeLock) {
+                    ColorState state = mColorNameStateMap.get(entry);
+                    if (state != null) {
+                        if (!state.isCompiled()) {
+                            compileColor(entry, new HashSet<>());
+                        }
+                        colorStateList = state.toColorStateList();
+                        if (colorStateList != null) {
+                            addColorToCache(colorRes, colorStateList);
+                        }
                     }
                 }
             }
@@ -198,11 +620,13 @@ public class SkinCompatUserThemeManager {
         }
         String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
         if (!TextUtils.isEmpty(entry)) {
-            int angle = ImageUtils.getImageRotateAngle(drawablePath);
-            String drawablePathAndAngle = drawablePath + ":" + String.valueOf(angle);
-            mDrawablePathAndAngleMap.put(entry, drawablePathAndAngle);
+            DrawableOverride override =
+                    DrawableOverride.resolve(entry, drawablePath, ImageUtils.getImageRotateAngle(drawablePath));
+            synchronized (mThemeLock) {
+                putDrawableOverride(override);
+                mDrawableEmpty = false;
+            }
             removeDrawableInCache(drawableRes);
-            mDrawableEmpty = false;
         }
     }
 
@@ -212,90 +636,159 @@ public class SkinCompatUserThemeManager {
         }
         String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
         if (!TextUtils.isEmpty(entry)) {
-            String drawablePathAndAngle = drawablePath + ":" + String.valueOf(angle);
-            mDrawablePathAndAngleMap.put(entry, drawablePathAndAngle);
+            DrawableOverride override = DrawableOverride.resolve(entry, drawablePath, angle);
+            synchronized (mThemeLock) {
+                putDrawableOverride(override);
+                mDrawableEmpty = false;
+            }
             removeDrawableInCache(drawableRes);
-            mDrawableEmpty = false;
         }
     }
 
+    /**
+     * Like {@link #addDrawablePath(int, String)}, but checks the file and reads its EXIF rotation
+     * and dimensions on a background thread instead of the caller's. The override is registered on
+     * the main thread once the file is probed, then the listener is called. As with the other
+     * setters, the override is not applied: call {@link #apply()} or use an {@link Editor} from the
+     * listener.
+     */
+    public void addDrawablePathAsync(@DrawableRes int drawableRes, String drawablePath,
+                                     @Nullable OnDrawablePathAddedListener listener) {
+        String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
+        if (TextUtils.isEmpty(entry)) {
+            if (listener != null) {
+                listener.onDrawablePathAdded(drawableRes, false);
+            }
+            return;
+        }
+        sProbeExecutor.execute(() -> {
+            final DrawableOverride override = checkPathValid(drawablePath)
+                    ? DrawableOverride.resolve(entry, drawablePath, ImageUtils.getImageRotateAngle(drawablePath))
+                    : null;
+            sMainHandler.post(() -> {
+                if (override != null) {
+                    synchronized (mThemeLock) {
+                        putDrawableOverride(override);
+                        mDrawableEmpty = false;
+                    }
+                    removeDrawableInCache(drawableRes);
+                }
+                if (listener != null) {
+                    listener.onDrawablePathAdded(drawableRes, override != null);
+                }
+            });
+        });
+    }
+
     public void removeDrawablePath(@DrawableRes int drawableRes) {
         String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
         if (!TextUtils.isEmpty(entry)) {
-            mDrawablePathAndAngleMap.remove(entry);
+            synchronized (mThemeLock) {
+                removeDrawableEntry(entry);
+                mDrawableEmpty = mDrawableOverrideMap.isEmpty();
+            }
             removeDrawableInCache(drawableRes);
-            mDrawableEmpty = mDrawablePathAndAngleMap.isEmpty();
         }
     }
 
-    public String getDrawablePath(String drawableName) {
-        String drawablePathAndAngle = mDrawablePathAndAngleMap.get(drawableName);
-        if (!TextUtils.isEmpty(drawablePathAndAngle)) {
-            String[] splits = drawablePathAndAngle.split(":");
-            return splits[0];
+    private void putDrawableOverride(DrawableOverride override) {
+        mDrawableOverrideMap.put(override.drawableName, override);
+        record(SkinUserThemeStore.Record.putDrawable(override));
+    }
+
+    private void removeDrawableEntry(String entry) {
+        mDrawableOverrideMap.remove(entry);
+        record(SkinUserThemeStore.Record.removeDrawable(entry));
+    }
+
+    public DrawableOverride getDrawableOverride(String drawableName) {
+        synchronized (mThemeLock) {
+            return mDrawableOverrideMap.get(drawableName);
         }
-        return "";
+    }
+
+    public String getDrawablePath(String drawableName) {
+        DrawableOverride override = getDrawableOverride(drawableName);
+        return override != null ? override.path : "";
     }
 
     public int getDrawableAngle(String drawableName) {
-        String drawablePathAndAngle = mDrawablePathAndAngleMap.get(drawableName);
-        if (!TextUtils.isEmpty(drawablePathAndAngle)) {
-            String[] splits = drawablePathAndAngle.split(":");
-            if (splits.length == 2) {
-                return Integer.valueOf(splits[1]);
-            }
-        }
-        return 0;
+        DrawableOverride override = getDrawableOverride(drawableName);
+        return override != null ? override.angle : 0;
     }
 
     public Drawable getDrawable(@DrawableRes int drawableRes) {
-        Drawable drawable = getCachedDrawable(drawableRes);
-        if (drawable == null) {
+        SkinUserThemeDrawable.State state = getCachedDrawableState(drawableRes);
+        if (state == null) {
             String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
             if (!TextUtils.isEmpty(entry)) {
-                String drawablePathAndAngle = mDrawablePathAndAngleMap.get(entry);
-                if (!TextUtils.isEmpty(drawablePathAndAngle)) {
-                    String[] splits = drawablePathAndAngle.split(":");
-                    String path = splits[0];
-                    int angle = 0;
-                    if (splits.length == 2) {
-                        angle = Integer.parseInt(splits[1]);
-                    }
-                    if (checkPathValid(path)) {
-                        if (angle == 0) {
-                            drawable = Drawable.createFromPath(path);
-                        } else {
-                            Matrix m = new Matrix();
-                            m.postRotate(angle);
-                            Bitmap bitmap = BitmapFactory.decodeFile(path);
-                            bitmap = Bitmap.createBitmap(bitmap, 0, 0,
-                                    bitmap.getWidth(), bitmap.getHeight(), m, true);
-                            drawable = new BitmapDrawable(null, bitmap);
-                        }
-                        if (drawable != null) {
-                            addDrawableToCache(drawableRes, drawable);
-                        }
-                    }
+                DrawableOverride override = getDrawableOverride(entry);
+                if (override != null) {
+                    // Decoded in the background once a drawable gets bounds.
+                    state = new SkinUserThemeDrawable.State(override, getMaxDecodeSize(), mDrawablePlaceholderColor);
+                    addDrawableStateToCache(drawableRes, state);
                 }
             }
         }
-        return drawable;
+        // Each caller gets its own drawable, sharing the decoded bitmap.
+        return state != null ? state.newDrawable() : null;
+    }
+
+    /**
+     * Limits the size user theme images are decoded at. Images are sampled down to the size of
+     * the views showing them, but never decoded larger than this.
+     *
+     * @param maxDecodeSize The maximum width and height in pixels, 0 for the size of the display.
+     */
+    public void setMaxDecodeSize(int maxDecodeSize) {
+        mMaxDecodeSize = maxDecodeSize;
+    }
+
+    /**
+     * Sets the color drawn in place of a user theme image while it is decoded. Transparent by default.
+     */
+    public void setDrawablePlaceholderColor(@ColorInt int color) {
+        mDrawablePlaceholderColor = color;
+    }
+
+    private int getMaxDecodeSize() {
+        if (mMaxDecodeSize > 0) {
+            return mMaxDecodeSize;
+        }
+        DisplayMetrics metrics = SkinCompatManager.getInstance().getContext().getResources().getDisplayMetrics();
+        return Math.max(metrics.widthPixels, metrics.heightPixels);
     }
 
     public void clearColors() {
-        mColorNameStateMap.clear();
+        synchronized (mThemeLock) {
+            clearColorEntries();
+        }
         clearColorCaches();
         mColorEmpty = true;
         apply();
     }
 
     public void clearDrawables() {
-        mDrawablePathAndAngleMap.clear();
+        synchronized (mThemeLock) {
+            clearDrawableEntries();
+        }
         clearDrawableCaches();
         mDrawableEmpty = true;
         apply();
     }
 
+    private void clearColorEntries() {
+        mColorNameStateMap.clear();
+        mColorDependents.clear();
+        mDirtyColors.clear();
+        record(SkinUserThemeStore.Record.clearColors());
+    }
+
+    private void clearDrawableEntries() {
+        mDrawableOverrideMap.clear();
+        record(SkinUserThemeStore.Record.clearDrawables());
+    }
+
     boolean isColorEmpty() {
         return mColorEmpty;
     }
@@ -313,33 +806,26 @@ public class SkinCompatUserThemeManager {
         synchronized (mColorCacheLock) {
             mColorCaches.clear();
         }
+        SkinCompatManager.getInstance().nextSkinGeneration();
     }
 
     private void clearDrawableCaches() {
         synchronized (mDrawableCacheLock) {
             mDrawableCaches.clear();
         }
+        SkinCompatManager.getInstance().nextSkinGeneration();
     }
 
     private ColorStateList getCachedColor(@ColorRes int colorRes) {
         synchronized (mColorCacheLock) {
-            WeakReference<ColorStateList> colorRef = mColorCaches.get(colorRes);
-            if (colorRef != null) {
-                ColorStateList colorStateList = colorRef.get();
-                if (colorStateList != null) {
-                    return colorStateList;
-                } else {
-                    mColorCaches.remove(colorRes);
-                }
-            }
+            return mColorCaches.get(colorRes);
         }
-        return null;
     }
 
     private void addColorToCache(@ColorRes int colorRes, ColorStateList colorStateList) {
         if (colorStateList != null) {
             synchronized (mColorCacheLock) {
-                mColorCaches.put(colorRes, new WeakReference<>(colorStateList));
+                mColorCaches.put(colorRes, colorStateList);
             }
         }
     }
@@ -348,41 +834,76 @@ public class SkinCompatUserThemeManager {
         synchronized (mColorCacheLock) {
             mColorCaches.remove(colorRes);
         }
+        SkinCompatManager.getInstance().nextSkinGeneration();
     }
 
-    private Drawable getCachedDrawable(@DrawableRes int drawableRes) {
+    private SkinUserThemeDrawable.State getCachedDrawableState(@DrawableRes int drawableRes) {
         synchronized (mDrawableCacheLock) {
-            Drawable drawable = mDrawableCaches.get(drawableRes);
-            if (drawable != null) {
-                return drawable;
-            } else {
-                mDrawableCaches.remove(drawableRes);
-            }
+            return mDrawableCaches.get(drawableRes);
+        }
+    }
+
+    private void addDrawableStateToCache(@DrawableRes int drawableRes, SkinUserThemeDrawable.State state) {
+        synchronized (mDrawableCacheLock) {
+            mDrawableCaches.put(drawableRes, state);
+        }
+    }
+
+    /**
+     * Called on the main thread when a cached image has been decoded, and so has grown.
+     */
+    void onDrawableDecoded() {
+        synchronized (mDrawableCacheLock) {
+            mDrawableCaches.trimToSize(mDrawableCaches.getMaxBytes());
         }
-        return null;
     }
 
-    private void addDrawableToCache(@DrawableRes int drawableRes, Drawable drawable) {
-        if (drawable != null) {
-            synchronized (mDrawableCacheLock) {
-                mDrawableCaches.put(drawableRes, drawable);
+    private void trimMemory(int level) {
+        SkinUserThemeDrawable.trimMemory();
+        synchronized (mDrawableCacheLock) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                mDrawableCaches.clear();
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                mDrawableCaches.trimToSize(mDrawableCaches.getMaxBytes() / 2);
             }
         }
+        if (Slog.DEBUG) {
+            Slog.i(TAG, "onTrimMemory: " + level);
+        }
     }
 
     private void removeDrawableInCache(@DrawableRes int drawableRes) {
         synchronized (mDrawableCacheLock) {
             mDrawableCaches.remove(drawableRes);
         }
+        SkinCompatManager.getInstance().nextSkinGeneration();
+    }
+
+    private void record(SkinUserThemeStore.Record record) {
+        synchronized (mPendingRecords) {
+            mPendingRecords.add(record);
+        }
     }
 
     private String getEntryName(int resId, String entryType) {
-        Context context = SkinCompatManager.getInstance().getContext();
-        String type = context.getResources().getResourceTypeName(resId);
-        if (entryType.equalsIgnoreCase(type)) {
-            return context.getResources().getResourceEntryName(resId);
+        boolean color = KEY_TYPE_COLOR.equals(entryType);
+        SparseArray<String> entryNames = color ? mColorEntryNames : mDrawableEntryNames;
+        String entry;
+        synchronized (mEntryNameLock) {
+            entry = entryNames.get(resId);
         }
-        return null;
+        if (entry == null) {
+            Context context = SkinCompatManager.getInstance().getContext();
+            String type = context.getResources().getResourceTypeName(resId);
+            entry = entryType.equalsIgnoreCase(type) ? context.getResources().getResourceEntryName(resId) : "";
+            synchronized (mEntryNameLock) {
+                entryNames.put(resId, entry);
+                if (color && !entry.isEmpty()) {
+                    mColorResIds.put(entry, resId);
+                }
+            }
+        }
+        return entry.isEmpty() ? null : entry;
     }
 
     private static boolean checkPathValid(String path) {
@@ -392,4 +913,177 @@ public class SkinCompatUserThemeManager {
         }
         return valid;
     }
+
+    private void commit(Editor editor) {
+        int recordsBefore;
+        int recordsAfter;
+        // Background lookups see the batch either not at all or as a whole.
+        synchronized (mThemeLock) {
+            synchronized (mPendingRecords) {
+                recordsBefore = mPendingRecords.size();
+            }
+            for (Runnable change : editor.mChanges) {
+                change.run();
+            }
+            synchronized (mPendingRecords) {
+                recordsAfter = mPendingRecords.size();
+            }
+            // Colors referring to the edited ones change too.
+            for (String name : mDirtyColors) {
+                Integer colorRes;
+                synchronized (mEntryNameLock) {
+                    colorRes = mColorResIds.get(name);
+                }
+                if (colorRes != null) {
+                    editor.mColorResIds.put(colorRes, true);
+                }
+            }
+            compileDirtyColors();
+            mColorEmpty = mColorNameStateMap.isEmpty();
+            mDrawableEmpty = mDrawableOverrideMap.isEmpty();
+        }
+        synchronized (mColorCacheLock) {
+            if (editor.mColorsCleared) {
+                mColorCaches.clear();
+            } else {
+                for (int i = 0; i < editor.mColorResIds.size(); i++) {
+                    mColorCaches.remove(editor.mColorResIds.keyAt(i));
+                }
+            }
+        }
+        synchronized (mDrawableCacheLock) {
+            if (editor.mDrawablesCleared) {
+                mDrawableCaches.clear();
+            } else {
+                for (int i = 0; i < editor.mDrawableResIds.size(); i++) {
+                    mDrawableCaches.remove(editor.mDrawableResIds.keyAt(i));
+                }
+            }
+        }
+        int[] resIds = new int[editor.mColorResIds.size() + editor.mDrawableResIds.size()];
+        for (int i = 0; i < editor.mColorResIds.size(); i++) {
+            resIds[i] = editor.mColorResIds.keyAt(i);
+        }
+        for (int i = 0; i < editor.mDrawableResIds.size(); i++) {
+            resIds[editor.mColorResIds.size() + i] = editor.mDrawableResIds.keyAt(i);
+        }
+        SkinUserThemeChange change = new SkinUserThemeChange(resIds, editor.mColorsCleared, editor.mDrawablesCleared);
+        // Edits made outside the editor since the last apply are flushed too, see apply().
+        apply(recordsBefore == 0 ? change : null, recordsAfter - recordsBefore);
+    }
+
+    public interface OnSeedColorAppliedListener {
+        /**
+         * @param palette The palette whose colors were committed.
+         */
+        void onSeedColorApplied(@NonNull SkinTonalPalette palette);
+    }
+
+    public interface OnDrawablePathAddedListener {
+        /**
+         * @param success Whether the file exists and the override was registered.
+         */
+        void onDrawablePathAdded(@DrawableRes int drawableRes, boolean success);
+    }
+
+    /**
+     * A batch of user theme edits. Nothing changes until {@link #commit()}, which applies all
+     * edits in order, invalidates the affected caches once, saves them in one write and notifies
+     * observers once with a {@link SkinUserThemeChange} listing the changed resources. Edits made
+     * outside the editor and not applied yet are applied with it, and then observers get null.
+     */
+    public final class Editor {
+        private final List<Runnable> mChanges = new ArrayList<>();
+        private final SparseBooleanArray mColorResIds = new SparseBooleanArray();
+        private final SparseBooleanArray mDrawableResIds = new SparseBooleanArray();
+        private boolean mColorsCleared;
+        private boolean mDrawablesCleared;
+        private boolean mCommitted;
+
+        private Editor() {
+        }
+
+        public Editor addColorState(@ColorRes int colorRes, ColorState state) {
+            String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
+            if (!TextUtils.isEmpty(entry) && state != null) {
+                mChanges.add(() -> putColorState(entry, state));
+                mColorResIds.put(colorRes, true);
+            }
+            return this;
+        }
+
+        public Editor addColorState(@ColorRes int colorRes, String colorDefault) {
+            if (!checkColorValid("colorDefault", colorDefault)) {
+                return this;
+            }
+            String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
+            if (!TextUtils.isEmpty(entry)) {
+                ColorState state = new ColorState(entry, colorDefault);
+                mChanges.add(() -> putColorState(entry, state));
+                mColorResIds.put(colorRes, true);
+            }
+            return this;
+        }
+
+        public Editor removeColorState(@ColorRes int colorRes) {
+            String entry = getEntryName(colorRes, KEY_TYPE_COLOR);
+            if (!TextUtils.isEmpty(entry)) {
+                mChanges.add(() -> removeColorEntry(entry));
+                mColorResIds.put(colorRes, true);
+            }
+            return this;
+        }
+
+        public Editor addDrawablePath(@DrawableRes int drawableRes, String drawablePath) {
+            if (checkPathValid(drawablePath)) {
+                addDrawablePath(drawableRes, drawablePath, ImageUtils.getImageRotateAngle(drawablePath));
+            }
+            return this;
+        }
+
+        public Editor addDrawablePath(@DrawableRes int drawableRes, String drawablePath, int angle) {
+            if (!checkPathValid(drawablePath)) {
+                return this;
+            }
+            String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
+            if (!TextUtils.isEmpty(entry)) {
+                DrawableOverride override = DrawableOverride.resolve(entry, drawablePath, angle);
+                mChanges.add(() -> putDrawableOverride(override));
+                mDrawableResIds.put(drawableRes, true);
+            }
+            return this;
+        }
+
+        public Editor removeDrawablePath(@DrawableRes int drawableRes) {
+            String entry = getEntryName(drawableRes, KEY_TYPE_DRAWABLE);
+            if (!TextUtils.isEmpty(entry)) {
+                mChanges.add(() -> removeDrawableEntry(entry));
+                mDrawableResIds.put(drawableRes, true);
+            }
+            return this;
+        }
+
+        public Editor clearColors() {
+            mChanges.add(SkinCompatUserThemeManager.this::clearColorEntries);
+            mColorsCleared = true;
+            return this;
+        }
+
+        public Editor clearDrawables() {
+            mChanges.add(SkinCompatUserThemeManager.this::clearDrawableEntries);
+            mDrawablesCleared = true;
+            return this;
+        }
+
+        /**
+         * Applies the edits. An editor can be committed once.
+         */
+        public void commit() {
+            if (mCommitted) {
+                throw new IllegalStateException("Editor already committed");
+            }
+            mCommitted = true;
+            SkinCompatUserThemeManager.this.commit(this);
+        }
+    }
 }
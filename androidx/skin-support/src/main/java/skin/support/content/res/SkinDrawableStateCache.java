@@ -0,0 +1,66 @@
+package skin.support.content.res;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import skin.support.utils.Slog;
+
+/**
+ * Least recently used cache of decoded user theme images, bounded by their size in bytes.
+ * <p>
+ * The states grow when their image is decoded in the background, so the size is summed again on
+ * each trim instead of being tracked at insertion, as {@code android.util.LruCache} would. The
+ * cache holds at most a few dozen entries, which keeps that cheap. Not thread safe.
+ */
+final class SkinDrawableStateCache {
+    private static final String TAG = "SkinDrawableStateCache";
+
+    private final LinkedHashMap<Integer, SkinUserThemeDrawable.State> mStates =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxBytes;
+
+    SkinDrawableStateCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    SkinUserThemeDrawable.State get(int resId) {
+        return mStates.get(resId);
+    }
+
+    void put(int resId, SkinUserThemeDrawable.State state) {
+        mStates.put(resId, state);
+        trimToSize(mMaxBytes);
+    }
+
+    void remove(int resId) {
+        mStates.remove(resId);
+    }
+
+    void clear() {
+        mStates.clear();
+    }
+
+    int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Evicts the least recently used images until the decoded ones fit into {@code maxBytes}.
+     */
+    void trimToSize(int maxBytes) {
+        long size = 0;
+        for (SkinUserThemeDrawable.State state : mStates.values()) {
+            size += state.getByteCount();
+        }
+        Iterator<Map.Entry<Integer, SkinUserThemeDrawable.State>> it = mStates.entrySet().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            SkinUserThemeDrawable.State state = it.next().getValue();
+            size -= state.getByteCount();
+            it.remove();
+            if (Slog.DEBUG) {
+                Slog.i(TAG, "Evicted " + state.mOverride.drawableName);
+            }
+        }
+    }
+}
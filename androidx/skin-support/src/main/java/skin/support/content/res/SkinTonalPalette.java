@@ -0,0 +1,166 @@
+package skin.support.content.res;
+
+import androidx.annotation.ColorInt;
+import androidx.core.graphics.ColorUtils;
+
+import java.util.Locale;
+
+import skin.support.annotation.NonNull;
+
+/**
+ * A tonal palette derived from a single seed color, with Material-like color roles.
+ * <p>
+ * Five tonal palettes are derived in HSL space: primary keeps the hue and saturation of the seed,
+ * secondary is a muted primary, tertiary is rotated by 60 degrees and the two neutrals are nearly
+ * gray. A tone from 0 (black) to 100 (white) is the HSL lightness of the palette. Each role picks
+ * a palette and a tone, depending on light or dark mode.
+ */
+public final class SkinTonalPalette {
+    public static final int PALETTE_PRIMARY = 0;
+    public static final int PALETTE_SECONDARY = 1;
+    public static final int PALETTE_TERTIARY = 2;
+    public static final int PALETTE_NEUTRAL = 3;
+    public static final int PALETTE_NEUTRAL_VARIANT = 4;
+
+    public static final int ROLE_PRIMARY = 0;
+    public static final int ROLE_ON_PRIMARY = 1;
+    public static final int ROLE_PRIMARY_CONTAINER = 2;
+    public static final int ROLE_ON_PRIMARY_CONTAINER = 3;
+    public static final int ROLE_SECONDARY = 4;
+    public static final int ROLE_ON_SECONDARY = 5;
+    public static final int ROLE_SECONDARY_CONTAINER = 6;
+    public static final int ROLE_ON_SECONDARY_CONTAINER = 7;
+    public static final int ROLE_TERTIARY = 8;
+    public static final int ROLE_ON_TERTIARY = 9;
+    public static final int ROLE_TERTIARY_CONTAINER = 10;
+    public static final int ROLE_ON_TERTIARY_CONTAINER = 11;
+    public static final int ROLE_BACKGROUND = 12;
+    public static final int ROLE_ON_BACKGROUND = 13;
+    public static final int ROLE_SURFACE = 14;
+    public static final int ROLE_ON_SURFACE = 15;
+    public static final int ROLE_SURFACE_VARIANT = 16;
+    public static final int ROLE_ON_SURFACE_VARIANT = 17;
+    public static final int ROLE_OUTLINE = 18;
+
+    private static final int PALETTE_COUNT = 5;
+    private static final int TONE_COUNT = 101;
+    /**
+     * Tone distance between a role color and its pressed and focused variants.
+     */
+    private static final int PRESSED_TONE_SHIFT = 10;
+    private static final int FOCUSED_TONE_SHIFT = 5;
+
+    /**
+     * {palette, light tone, dark tone} of each role, indexed by role.
+     */
+    private static final int[][] ROLES = {
+            {PALETTE_PRIMARY, 40, 80},
+            {PALETTE_PRIMARY, 100, 20},
+            {PALETTE_PRIMARY, 90, 30},
+            {PALETTE_PRIMARY, 10, 90},
+            {PALETTE_SECONDARY, 40, 80},
+            {PALETTE_SECONDARY, 100, 20},
+            {PALETTE_SECONDARY, 90, 30},
+            {PALETTE_SECONDARY, 10, 90},
+            {PALETTE_TERTIARY, 40, 80},
+            {PALETTE_TERTIARY, 100, 20},
+            {PALETTE_TERTIARY, 90, 30},
+            {PALETTE_TERTIARY, 10, 90},
+            {PALETTE_NEUTRAL, 99, 10},
+            {PALETTE_NEUTRAL, 10, 90},
+            {PALETTE_NEUTRAL, 99, 10},
+            {PALETTE_NEUTRAL, 10, 90},
+            {PALETTE_NEUTRAL_VARIANT, 90, 30},
+            {PALETTE_NEUTRAL_VARIANT, 30, 80},
+            {PALETTE_NEUTRAL_VARIANT, 50, 60},
+    };
+
+    private final int mSeedColor;
+    private final boolean mDark;
+    /**
+     * Every tone of every palette, palette-major.
+     */
+    private final int[] mTones = new int[PALETTE_COUNT * TONE_COUNT];
+
+    private SkinTonalPalette(int seedColor, boolean dark) {
+        mSeedColor = seedColor;
+        mDark = dark;
+        float[] hsl = new float[3];
+        ColorUtils.colorToHSL(seedColor, hsl);
+        float hue = hsl[0];
+        float saturation = Math.max(hsl[1], 0.35f);
+        fillPalette(PALETTE_PRIMARY, hue, saturation);
+        fillPalette(PALETTE_SECONDARY, hue, saturation / 3f);
+        fillPalette(PALETTE_TERTIARY, (hue + 60f) % 360f, saturation * 2f / 3f);
+        fillPalette(PALETTE_NEUTRAL, hue, 0.04f);
+        fillPalette(PALETTE_NEUTRAL_VARIANT, hue, 0.08f);
+    }
+
+    /**
+     * Computes the palette of a seed color, a few hundred HSL conversions, cheap enough for any
+     * thread. {@link SkinCompatUserThemeManager#applySeedColor} also caches palettes by seed.
+     */
+    @NonNull
+    public static SkinTonalPalette fromSeed(@ColorInt int seedColor, boolean dark) {
+        return new SkinTonalPalette(seedColor, dark);
+    }
+
+    private void fillPalette(int palette, float hue, float saturation) {
+        float[] hsl = {hue, saturation, 0f};
+        for (int tone = 0; tone < TONE_COUNT; tone++) {
+            hsl[2] = tone / 100f;
+            mTones[palette * TONE_COUNT + tone] = ColorUtils.HSLToColor(hsl);
+        }
+    }
+
+    @ColorInt
+    public int getSeedColor() {
+        return mSeedColor;
+    }
+
+    public boolean isDark() {
+        return mDark;
+    }
+
+    /**
+     * @param palette One of the {@code PALETTE_} constants.
+     * @param tone    The tone, from 0 (black) to 100 (white).
+     */
+    @ColorInt
+    public int getTone(int palette, int tone) {
+        return mTones[palette * TONE_COUNT + Math.max(0, Math.min(100, tone))];
+    }
+
+    /**
+     * @param role One of the {@code ROLE_} constants.
+     */
+    @ColorInt
+    public int getColor(int role) {
+        int[] spec = ROLES[role];
+        return getTone(spec[0], mDark ? spec[2] : spec[1]);
+    }
+
+    /**
+     * Creates the user color of a role: its tone by default, and a tone closer to the middle of the
+     * palette when pressed or focused, so the variants stay visible on light and dark tones alike.
+     *
+     * @param role One of the {@code ROLE_} constants.
+     */
+    @NonNull
+    public ColorState createColorState(int role) {
+        int[] spec = ROLES[role];
+        int tone = mDark ? spec[2] : spec[1];
+        int direction = tone >= 50 ? -1 : 1;
+        String pressed = toColorString(getTone(spec[0], tone + direction * PRESSED_TONE_SHIFT));
+        String focused = toColorString(getTone(spec[0], tone + direction * FOCUSED_TONE_SHIFT));
+        return new ColorState.ColorBuilder()
+                .setColorPressed(pressed)
+                .setColorFocused(focused)
+                .setColorDefault(toColorString(getTone(spec[0], tone)))
+                .build();
+    }
+
+    private static String toColorString(int color) {
+        return String.format(Locale.US, "#%08X", color);
+    }
+}
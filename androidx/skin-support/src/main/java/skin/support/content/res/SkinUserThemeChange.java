@@ -0,0 +1,94 @@
+package skin.support.content.res;
+
+import java.util.Arrays;
+
+import skin.support.annotation.NonNull;
+
+/**
+ * Passed to {@link skin.support.observe.SkinObserver#updateSkin} when a
+ * {@link SkinCompatUserThemeManager.Editor} is committed, describing which resources changed.
+ * Observers that only use a few resources can skip updates that do not touch them; a null
+ * argument still means that everything may have changed. The activity observers use it to leave
+ * the window background alone when it is not affected.
+ */
+public final class SkinUserThemeChange {
+    private final int[] mResIds;
+    private final boolean mColorsCleared;
+    private final boolean mDrawablesCleared;
+
+    SkinUserThemeChange(@NonNull int[] resIds, boolean colorsCleared, boolean drawablesCleared) {
+        mResIds = resIds;
+        Arrays.sort(mResIds);
+        mColorsCleared = colorsCleared;
+        mDrawablesCleared = drawablesCleared;
+    }
+
+    /**
+     * @return The sorted ids of the colors and drawables that were added or removed.
+     */
+    @NonNull
+    public int[] getChangedResIds() {
+        return mResIds.clone();
+    }
+
+    /**
+     * @return Whether all user colors were removed, which may change any color resource.
+     */
+    public boolean isColorsCleared() {
+        return mColorsCleared;
+    }
+
+    /**
+     * @return Whether all user drawables were removed, which may change any drawable resource.
+     */
+    public boolean isDrawablesCleared() {
+        return mDrawablesCleared;
+    }
+
+    /**
+     * @return Whether the resource may have a different value after this change.
+     */
+    public boolean affects(int resId) {
+        return mColorsCleared || mDrawablesCleared || Arrays.binarySearch(mResIds, resId) >= 0;
+    }
+
+    /**
+     * Combines two changes dispatched in the same frame.
+     */
+    @NonNull
+    public SkinUserThemeChange merge(@NonNull SkinUserThemeChange other) {
+        int[] resIds = new int[mResIds.length + other.mResIds.length];
+        System.arraycopy(mResIds, 0, resIds, 0, mResIds.length);
+        System.arraycopy(other.mResIds, 0, resIds, mResIds.length, other.mResIds.length);
+        return new SkinUserThemeChange(resIds, mColorsCleared || other.mColorsCleared,
+                mDrawablesCleared || other.mDrawablesCleared);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SkinUserThemeChange)) {
+            return false;
+        }
+        SkinUserThemeChange that = (SkinUserThemeChange) o;
+        return mColorsCleared == that.mColorsCleared
+                && mDrawablesCleared == that.mDrawablesCleared
+                && Arrays.equals(mResIds, that.mResIds);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(mResIds);
+        result = 31 * result + (mColorsCleared ? 1 : 0);
+        result = 31 * result + (mDrawablesCleared ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SkinUserThemeChange{resIds=" + Arrays.toString(mResIds)
+                + ", colorsCleared=" + mColorsCleared + ", drawablesCleared=" + mDrawablesCleared + "}";
+    }
+}
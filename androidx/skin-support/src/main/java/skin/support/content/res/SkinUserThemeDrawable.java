@@ -0,0 +1,342 @@
+package skin.support.content.res;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+import skin.support.utils.Slog;
+
+/**
+ * Draws the image file of a {@link DrawableOverride}.
+ * <p>
+ * The file is decoded on a background thread, sampled down to the largest bounds any drawable of
+ * the same {@link State} was given, capped by {@link SkinCompatUserThemeManager#setMaxDecodeSize(int)}.
+ * Until then the placeholder color is drawn. The EXIF rotation is applied when drawing rather than
+ * by rotating a copy of the bitmap, and bitmaps replaced by a larger decode are reused through
+ * {@link BitmapFactory.Options#inBitmap}. The intrinsic size is the one of the rotated file, so it is
+ * known before decoding and does not change with the sampling.
+ */
+final class SkinUserThemeDrawable extends Drawable {
+    private static final String TAG = "SkinUserThemeDrawable";
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final BitmapPool sBitmapPool = new BitmapPool();
+
+    private final State mState;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+    private final Paint mPlaceholderPaint = new Paint();
+    private final Matrix mMatrix = new Matrix();
+    private final RectF mRect = new RectF();
+
+    SkinUserThemeDrawable(@NonNull State state) {
+        mState = state;
+        // newDrawable() may be called off the main thread, e.g. by a background inflation.
+        synchronized (state.mDrawables) {
+            state.mDrawables.add(new WeakReference<>(this));
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            return;
+        }
+        Bitmap bitmap = mState.mBitmap;
+        if (bitmap == null) {
+            mState.request(bounds.width(), bounds.height());
+            if (mState.mPlaceholderColor != 0) {
+                mPlaceholderPaint.setColor(mState.mPlaceholderColor);
+                canvas.drawRect(bounds, mPlaceholderPaint);
+            }
+            return;
+        }
+        mRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mMatrix.setRotate(mState.mOverride.angle);
+        mMatrix.mapRect(mRect);
+        mMatrix.postTranslate(-mRect.left, -mRect.top);
+        mMatrix.postScale(bounds.width() / mRect.width(), bounds.height() / mRect.height());
+        mMatrix.postTranslate(bounds.left, bounds.top);
+        canvas.drawBitmap(bitmap, mMatrix, mPaint);
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        if (!bounds.isEmpty()) {
+            mState.request(bounds.width(), bounds.height());
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mState.isRotatedSideways() ? mState.mOverride.height : mState.mOverride.width;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mState.isRotatedSideways() ? mState.mOverride.width : mState.mOverride.height;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mPaint.getAlpha() != alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
+
+    /**
+     * Drops the bitmaps kept for reuse.
+     */
+    static void trimMemory() {
+        sBitmapPool.clear();
+    }
+
+    /**
+     * The decoded bitmap of an override, shared by all drawables created from it.
+     * Accessed on the main thread only, except for the decoding itself and {@link #mDrawables},
+     * which drawables created on any thread add themselves to.
+     */
+    static final class State extends ConstantState {
+        final DrawableOverride mOverride;
+        private final int mMaxDecodeSize;
+        private final int mPlaceholderColor;
+        private final List<WeakReference<SkinUserThemeDrawable>> mDrawables = new ArrayList<>();
+        private Bitmap mBitmap;
+        private int mSampleSize;
+        private int mRequestedWidth;
+        private int mRequestedHeight;
+        private boolean mDecoding;
+        private boolean mFailed;
+
+        State(@NonNull DrawableOverride override, int maxDecodeSize, int placeholderColor) {
+            mOverride = override;
+            mMaxDecodeSize = maxDecodeSize;
+            mPlaceholderColor = placeholderColor;
+        }
+
+        @NonNull
+        @Override
+        public Drawable newDrawable() {
+            return new SkinUserThemeDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+
+        /**
+         * @return The size of the decoded bitmap in bytes, 0 before it is decoded.
+         */
+        int getByteCount() {
+            Bitmap bitmap = mBitmap;
+            return bitmap != null ? bitmap.getAllocationByteCount() : 0;
+        }
+
+        boolean isRotatedSideways() {
+            return mOverride.angle % 180 != 0;
+        }
+
+        /**
+         * Makes sure the bitmap is decoded with enough pixels for the given bounds.
+         */
+        void request(int width, int height) {
+            mRequestedWidth = Math.max(mRequestedWidth, width);
+            mRequestedHeight = Math.max(mRequestedHeight, height);
+            if (mDecoding || mFailed) {
+                // The decode in flight picks the new size up when it finishes.
+                return;
+            }
+            int sampleSize = computeSampleSize();
+            if (mBitmap == null || sampleSize < mSampleSize) {
+                decode(sampleSize);
+            }
+        }
+
+        private int computeSampleSize() {
+            int width = isRotatedSideways() ? mOverride.height : mOverride.width;
+            int height = isRotatedSideways() ? mOverride.width : mOverride.height;
+            int targetWidth = Math.min(mRequestedWidth, mMaxDecodeSize);
+            int targetHeight = Math.min(mRequestedHeight, mMaxDecodeSize);
+            int sampleSize = 1;
+            if (targetWidth > 0 && targetHeight > 0) {
+                while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+                    sampleSize *= 2;
+                }
+            }
+            return sampleSize;
+        }
+
+        private void decode(final int sampleSize) {
+            mDecoding = true;
+            sExecutor.execute(() -> {
+                final Bitmap bitmap = decodeFile(sampleSize);
+                sMainHandler.post(() -> onDecoded(bitmap, sampleSize));
+            });
+        }
+
+        @Nullable
+        private Bitmap decodeFile(int sampleSize) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            if (mOverride.width > 0 && mOverride.height > 0) {
+                int width = (mOverride.width + sampleSize - 1) / sampleSize;
+                int height = (mOverride.height + sampleSize - 1) / sampleSize;
+                options.inBitmap = sBitmapPool.get(width * height * 4);
+            }
+            try {
+                try {
+                    return BitmapFactory.decodeFile(mOverride.path, options);
+                } catch (IllegalArgumentException e) {
+                    // The pooled bitmap could not be reused for this image.
+                    options.inBitmap = null;
+                    return BitmapFactory.decodeFile(mOverride.path, options);
+                }
+            } catch (OutOfMemoryError e) {
+                Log.e(TAG, "Out of memory decoding " + mOverride.path, e);
+                return null;
+            }
+        }
+
+        private void onDecoded(@Nullable Bitmap bitmap, int sampleSize) {
+            mDecoding = false;
+            if (bitmap == null) {
+                mFailed = true;
+                if (Slog.DEBUG) {
+                    Slog.i(TAG, "Failed to decode " + mOverride.path);
+                }
+                return;
+            }
+            Bitmap previous = mBitmap;
+            mBitmap = bitmap;
+            mSampleSize = sampleSize;
+            if (previous != null) {
+                recycleAfterNextFrame(previous);
+            }
+            if (Slog.DEBUG) {
+                Slog.i(TAG, "Decoded " + mOverride.drawableName + " at 1/" + sampleSize
+                        + ": " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            }
+            List<SkinUserThemeDrawable> drawables = new ArrayList<>();
+            synchronized (mDrawables) {
+                for (Iterator<WeakReference<SkinUserThemeDrawable>> it = mDrawables.iterator(); it.hasNext(); ) {
+                    SkinUserThemeDrawable drawable = it.next().get();
+                    if (drawable == null) {
+                        it.remove();
+                    } else {
+                        drawables.add(drawable);
+                    }
+                }
+            }
+            for (SkinUserThemeDrawable drawable : drawables) {
+                drawable.invalidateSelf();
+            }
+            SkinCompatUserThemeManager.get().onDrawableDecoded();
+            int wanted = computeSampleSize();
+            if (wanted < sampleSize) {
+                // A larger view asked for the image while it was decoding.
+                decode(wanted);
+            }
+        }
+
+        /**
+         * Hands a replaced bitmap to the pool once the frame drawing its replacement is done.
+         * Until then the last frame's display lists still reference it, and a decode into it
+         * would show up on screen.
+         */
+        private static void recycleAfterNextFrame(@NonNull final Bitmap bitmap) {
+            // Frame callbacks run before the traversal of the same frame, the message after it.
+            Choreographer.getInstance().postFrameCallback(
+                    frameTimeNanos -> sMainHandler.post(() -> sBitmapPool.put(bitmap)));
+        }
+    }
+
+    /**
+     * A few bitmaps replaced by larger decodes, kept for {@link BitmapFactory.Options#inBitmap}.
+     */
+    private static final class BitmapPool {
+        private static final int MAX_SIZE = 3;
+
+        private final List<Bitmap> mBitmaps = new ArrayList<>(MAX_SIZE);
+
+        synchronized void clear() {
+            mBitmaps.clear();
+        }
+
+        synchronized void put(@NonNull Bitmap bitmap) {
+            if (!bitmap.isMutable() || bitmap.isRecycled()) {
+                return;
+            }
+            if (mBitmaps.size() == MAX_SIZE) {
+                mBitmaps.remove(0);
+            }
+            mBitmaps.add(bitmap);
+        }
+
+        /**
+         * @return The smallest pooled bitmap of at least {@code byteCount} bytes, if any.
+         */
+        @Nullable
+        synchronized Bitmap get(int byteCount) {
+            Bitmap best = null;
+            for (Bitmap bitmap : mBitmaps) {
+                int size = bitmap.getAllocationByteCount();
+                if (size >= byteCount && (best == null || size < best.getAllocationByteCount())) {
+                    best = bitmap;
+                }
+            }
+            if (best != null) {
+                mBitmaps.remove(best);
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package skin.support.content.res;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+
+/**
+ * Binary, memory-mapped storage of the user theme.
+ * <p>
+ * The file is a log of small records (put/remove of a color or drawable, clear all colors or
+ * drawables) between a start and an end offset kept in the header. Loading replays the mapped
+ * records without any parsing beyond reading lengths; {@link SkinCompatUserThemeManager#apply()}
+ * appends only the edits made since the previous apply. When the log grows well past the live
+ * entries, {@link #compact} writes a snapshot of the live entries into free space and switches the
+ * range to it with a single 8-byte header write, so a crash never leaves a half-written state.
+ * <p>
+ * Writers take an exclusive file lock and readers a shared one, so several processes can use the
+ * same file.
+ */
+final class SkinUserThemeStore {
+    private static final String TAG = "SkinUserThemeStore";
+
+    private static final int MAGIC = 0x534b5554; // "SKUT"
+    /**
+     * 1: drawables are stored as a name and a {@code path:angle} string.
+     * 2: drawables are stored with the size, modification time and dimensions of the file.
+     * Older files are upgraded by {@link #open()}, which rewrites their records in the current layout.
+     */
+    private static final int VERSION = 2;
+    private static final int DRAWABLE_FIELDS_V1 = 2;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    /**
+     * Start offset in the high and end offset in the low 32 bits, written at once.
+     */
+    private static final int OFFSET_RANGE = 8;
+    private static final int OFFSET_RECORD_COUNT = 16;
+    private static final int HEADER_SIZE = 20;
+    private static final int MIN_CAPACITY = 16 * 1024;
+
+    static final byte OP_PUT_COLOR = 1;
+    static final byte OP_PUT_DRAWABLE = 2;
+    static final byte OP_REMOVE_COLOR = 3;
+    static final byte OP_REMOVE_DRAWABLE = 4;
+    static final byte OP_CLEAR_COLORS = 5;
+    static final byte OP_CLEAR_DRAWABLES = 6;
+
+    private final File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private int mRecordCount;
+    /**
+     * Whether the file was written by a newer version. Its records are read as far as they are
+     * understood, but never written, so going back to an older app version keeps them.
+     */
+    private boolean mReadOnly;
+
+    SkinUserThemeStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return Whether the store file exists, i.e. the user theme was already written in this format.
+     */
+    synchronized boolean exists() {
+        return mFile.exists() && mFile.length() >= HEADER_SIZE;
+    }
+
+    /**
+     * Replays the stored records.
+     */
+    synchronized void load(@NonNull Map<String, ColorState> colors, @NonNull Map<String, DrawableOverride> drawables)
+            throws IOException {
+        // Reopen, another process may have grown the file since it was mapped.
+        close();
+        open();
+        try (FileLock ignored = mChannel.lock(0, Long.MAX_VALUE, true)) {
+            remapIfGrown();
+            replayLocked(colors, drawables);
+        }
+    }
+
+    /**
+     * @return The number of records in the log, live or not.
+     */
+    synchronized int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Appends records to the log.
+     */
+    synchronized void append(@NonNull List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        open();
+        if (mReadOnly) {
+            Log.w(TAG, "Not saving " + records.size() + " user theme edits into a newer store");
+            return;
+        }
+        byte[][] encoded = new byte[records.size()][];
+        int size = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = records.get(i).encode();
+            size += encoded[i].length;
+        }
+        try (FileLock ignored = mChannel.lock()) {
+            remapIfGrown();
+            long range = mBuffer.getLong(OFFSET_RANGE);
+            int start = (int) (range >>> 32);
+            int end = (int) range;
+            ensureCapacity(end + size);
+            int position = end;
+            for (byte[] record : encoded) {
+                put(position, record);
+                position += record.length;
+            }
+            mRecordCount = mBuffer.getInt(OFFSET_RECORD_COUNT) + encoded.length;
+            mBuffer.putInt(OFFSET_RECORD_COUNT, mRecordCount);
+            // Publish the new end only once the records are in place.
+            mBuffer.putLong(OFFSET_RANGE, range(start, position));
+        }
+    }
+
+    /**
+     * Replaces the log with a snapshot of the given live entries.
+     */
+    synchronized void compact(@NonNull Map<String, ColorState> colors, @NonNull Map<String, DrawableOverride> drawables)
+            throws IOException {
+        open();
+        if (mReadOnly) {
+            return;
+        }
+        try (FileLock ignored = mChannel.lock()) {
+            remapIfGrown();
+            writeSnapshotLocked(colors, drawables);
+        }
+    }
+
+    /**
+     * Replaces the log with a snapshot of the entries it currently describes. Unlike
+     * {@link #compact(Map, Map)} this does not need the caller's maps, so it can run on any thread.
+     */
+    synchronized void compact() throws IOException {
+        open();
+        if (mReadOnly) {
+            return;
+        }
+        try (FileLock ignored = mChannel.lock()) {
+            remapIfGrown();
+            Map<String, ColorState> colors = new HashMap<>();
+            Map<String, DrawableOverride> drawables = new HashMap<>();
+            replayLocked(colors, drawables);
+            writeSnapshotLocked(colors, drawables);
+        }
+    }
+
+    private void replayLocked(Map<String, ColorState> colors, Map<String, DrawableOverride> drawables) {
+        long range = mBuffer.getLong(OFFSET_RANGE);
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        mRecordCount = mBuffer.getInt(OFFSET_RECORD_COUNT);
+        ByteBuffer records = mBuffer.duplicate();
+        records.limit(end).position(start);
+        while (records.remaining() >= 4) {
+            int length = records.getInt();
+            if (length <= 0 || length > records.remaining()) {
+                Log.e(TAG, "Truncated user theme record at " + (records.position() - 4));
+                break;
+            }
+            int next = records.position() + length;
+            try {
+                replay(records, colors, drawables);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Skipping malformed user theme record", e);
+            }
+            records.position(next);
+        }
+    }
+
+    private void writeSnapshotLocked(Map<String, ColorState> colors, Map<String, DrawableOverride> drawables)
+            throws IOException {
+        List<byte[]> encoded = new ArrayList<>(colors.size() + drawables.size());
+        int size = 0;
+        for (ColorState state : colors.values()) {
+            byte[] record = Record.putColor(state).encode();
+            encoded.add(record);
+            size += record.length;
+        }
+        for (DrawableOverride override : drawables.values()) {
+            byte[] record = Record.putDrawable(override).encode();
+            encoded.add(record);
+            size += record.length;
+        }
+        long range = mBuffer.getLong(OFFSET_RANGE);
+        int start = (int) (range >>> 32);
+        int end = (int) range;
+        // Write into the free space in front of the current log if the snapshot fits there,
+        // otherwise behind it; the current log stays intact until the range switches.
+        int position = HEADER_SIZE + size <= start ? HEADER_SIZE : end;
+        ensureCapacity(position + size);
+        int snapshotStart = position;
+        for (byte[] record : encoded) {
+            put(position, record);
+            position += record.length;
+        }
+        mBuffer.force();
+        mBuffer.putLong(OFFSET_RANGE, range(snapshotStart, position));
+        mRecordCount = encoded.size();
+        mBuffer.putInt(OFFSET_RECORD_COUNT, mRecordCount);
+        mBuffer.force();
+    }
+
+    synchronized void close() {
+        if (mRandomAccessFile != null) {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close " + mFile, e);
+            }
+        }
+        mRandomAccessFile = null;
+        mChannel = null;
+        mBuffer = null;
+    }
+
+    private void open() throws IOException {
+        if (mBuffer != null) {
+            return;
+        }
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        try (FileLock ignored = mChannel.lock()) {
+            if (mRandomAccessFile.length() < MIN_CAPACITY) {
+                mRandomAccessFile.setLength(MIN_CAPACITY);
+            }
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, mRandomAccessFile.length());
+            int version = mBuffer.getInt(OFFSET_VERSION);
+            mReadOnly = false;
+            if (mBuffer.getInt(OFFSET_MAGIC) != MAGIC) {
+                mBuffer.putLong(OFFSET_RANGE, range(HEADER_SIZE, HEADER_SIZE));
+                mBuffer.putInt(OFFSET_RECORD_COUNT, 0);
+                mBuffer.putInt(OFFSET_VERSION, VERSION);
+                mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+            } else if (version > VERSION) {
+                Log.w(TAG, "User theme written by store version " + version + ", opened read-only");
+                mReadOnly = true;
+            } else if (version < VERSION) {
+                // Old records stay readable, see toDrawableOverride(), but version 1 drawables check
+                // their file on every load. Rewrite them once; a crash before the version is bumped
+                // leaves a valid version 1 file.
+                Map<String, ColorState> colors = new HashMap<>();
+                Map<String, DrawableOverride> drawables = new HashMap<>();
+                replayLocked(colors, drawables);
+                writeSnapshotLocked(colors, drawables);
+                mBuffer.putInt(OFFSET_VERSION, VERSION);
+                mBuffer.force();
+            }
+        }
+    }
+
+    private void remapIfGrown() throws IOException {
+        long length = mRandomAccessFile.length();
+        if (length > mBuffer.capacity()) {
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= mBuffer.capacity()) {
+            return;
+        }
+        long capacity = mBuffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        mRandomAccessFile.setLength(capacity);
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void put(int position, byte[] bytes) {
+        ByteBuffer target = mBuffer.duplicate();
+        target.position(position);
+        target.put(bytes);
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    private static void replay(ByteBuffer records, Map<String, ColorState> colors, Map<String, DrawableOverride> drawables) {
+        byte op = records.get();
+        String[] fields = new String[records.get() & 0xff];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readString(records);
+        }
+        switch (op) {
+            case OP_PUT_COLOR:
+                ColorState state = Record.toColorState(fields);
+                if (state != null) {
+                    colors.put(state.colorName, state);
+                }
+                break;
+            case OP_PUT_DRAWABLE:
+                DrawableOverride override = Record.toDrawableOverride(fields);
+                drawables.put(override.drawableName, override);
+                break;
+            case OP_REMOVE_COLOR:
+                colors.remove(fields[0]);
+                break;
+            case OP_REMOVE_DRAWABLE:
+                drawables.remove(fields[0]);
+                break;
+            case OP_CLEAR_COLORS:
+                colors.clear();
+                break;
+            case OP_CLEAR_DRAWABLES:
+                drawables.clear();
+                break;
+            default:
+                // Written by a newer version; its length lets us skip it.
+                break;
+        }
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A single user theme edit.
+     */
+    static final class Record {
+        private final byte mOp;
+        private final String[] mFields;
+
+        private Record(byte op, String... fields) {
+            mOp = op;
+            mFields = fields;
+        }
+
+        static Record putColor(@NonNull ColorState state) {
+            if (state.onlyDefaultColor) {
+                return new Record(OP_PUT_COLOR, state.colorName, state.colorDefault);
+            }
+            return new Record(OP_PUT_COLOR, state.colorName, state.colorDefault,
+                    state.colorWindowFocused, state.colorSelected, state.colorFocused,
+                    state.colorEnabled, state.colorPressed, state.colorChecked,
+                    state.colorActivated, state.colorAccelerated, state.colorHovered,
+                    state.colorDragCanAccept, state.colorDragHovered);
+        }
+
+        static Record putDrawable(@NonNull DrawableOverride override) {
+            return new Record(OP_PUT_DRAWABLE, override.drawableName, override.path,
+                    String.valueOf(override.angle), String.valueOf(override.fileSize),
+                    String.valueOf(override.lastModified), String.valueOf(override.width),
+                    String.valueOf(override.height));
+        }
+
+        static Record removeColor(@NonNull String colorName) {
+            return new Record(OP_REMOVE_COLOR, colorName);
+        }
+
+        static Record removeDrawable(@NonNull String drawableName) {
+            return new Record(OP_REMOVE_DRAWABLE, drawableName);
+        }
+
+        static Record clearColors() {
+            return new Record(OP_CLEAR_COLORS);
+        }
+
+        static Record clearDrawables() {
+            return new Record(OP_CLEAR_DRAWABLES);
+        }
+
+        @Nullable
+        static ColorState toColorState(String[] fields) {
+            try {
+                if (fields.length == 2) {
+                    return new ColorState(fields[0], fields[1]);
+                }
+                ColorState state = new ColorState(fields[2], fields[3], fields[4], fields[5], fields[6],
+                        fields[7], fields[8], fields[9], fields[10], fields[11], fields[12], fields[1]);
+                state.colorName = fields[0];
+                return state;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Skipping invalid color " + fields[0], e);
+                return null;
+            }
+        }
+
+        @NonNull
+        static DrawableOverride toDrawableOverride(String[] fields) {
+            if (fields.length == DRAWABLE_FIELDS_V1) {
+                // Only replayed while open() upgrades a version 1 file, the file is checked here.
+                return DrawableOverride.fromPathAndAngle(fields[0], fields[1]);
+            }
+            return new DrawableOverride(fields[0], fields[1], Integer.parseInt(fields[2]),
+                    Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                    Integer.parseInt(fields[5]), Integer.parseInt(fields[6]));
+        }
+
+        byte[] encode() {
+            byte[][] fields = new byte[mFields.length][];
+            int length = 2;
+            for (int i = 0; i < mFields.length; i++) {
+                fields[i] = mFields[i] != null ? mFields[i].getBytes(StandardCharsets.UTF_8) : null;
+                if (fields[i] != null && fields[i].length > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("User theme value too long: " + mFields[i]);
+                }
+                length += 2 + (fields[i] != null ? fields[i].length : 0);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+            buffer.putInt(length);
+            buffer.put(mOp);
+            buffer.put((byte) mFields.length);
+            for (byte[] field : fields) {
+                if (field == null) {
+                    buffer.putShort((short) -1);
+                } else {
+                    buffer.putShort((short) field.length);
+                    buffer.put(field);
+                }
+            }
+            return buffer.array();
+        }
+    }
+}
@@ -1,33 +1,82 @@
 package skin.support.observe;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Objects;
 
 /**
  * A class that manages a list of {@link SkinObserver} instances and notifies them of skin updates.
- * Observers are notified in reverse order of registration to maintain consistency with the original
- * implementation. All observer management methods are thread-safe.
+ * Observers with a higher priority are notified first; observers sharing a priority are notified in
+ * reverse order of registration to maintain consistency with the original implementation.
+ * <p>
+ * The observer list is copy-on-write, so notification never copies or locks it. Notifications
+ * requested within the same frame are coalesced into a single dispatch on the main looper.
+ * All observer management methods are thread-safe.
  */
 public class SkinObservable {
-    private final List<SkinObserver> mObservers = Collections.synchronizedList(new ArrayList<>());
+    private static final String TAG = "SkinObservable";
+
+    /**
+     * Priority used by {@link #addObserver(SkinObserver)}.
+     */
+    public static final int PRIORITY_DEFAULT = 0;
+
+    private static final ObserverEntry[] EMPTY = new ObserverEntry[0];
+
+    private final Object mLock = new Object();
+    /**
+     * Sorted by ascending priority, then by registration order. Replaced, never mutated.
+     */
+    private volatile ObserverEntry[] mObservers = EMPTY;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mScheduleRunnable = this::scheduleFrameDispatch;
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> dispatchPending();
+    private boolean mDispatchPending;
+    private Object mPendingArg;
+    private volatile boolean mCoalesceEnabled = true;
+    private volatile OnObserverErrorListener mErrorListener;
 
     /**
-     * Adds an observer to the list if it is not already present.
+     * Adds an observer with {@link #PRIORITY_DEFAULT} if it is not already present.
      *
      * @param observer The {@link SkinObserver} to add.
      * @throws NullPointerException if the observer is null.
      */
     public void addObserver(@NonNull SkinObserver observer) {
+        addObserver(observer, PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Adds an observer with the given priority if it is not already present. Observers with a higher
+     * priority are notified before observers with a lower one.
+     *
+     * @param observer The {@link SkinObserver} to add.
+     * @param priority The notification priority.
+     * @throws NullPointerException if the observer is null.
+     */
+    public void addObserver(@NonNull SkinObserver observer, int priority) {
         Objects.requireNonNull(observer, "Observer must not be null");
-        synchronized (mObservers) {
-            if (!mObservers.contains(observer)) {
-                mObservers.add(observer);
+        synchronized (mLock) {
+            ObserverEntry[] current = mObservers;
+            if (indexOf(current, observer) >= 0) {
+                return;
+            }
+            int insertAt = current.length;
+            while (insertAt > 0 && current[insertAt - 1].priority > priority) {
+                insertAt--;
             }
+            ObserverEntry[] updated = new ObserverEntry[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = new ObserverEntry(observer, priority);
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            mObservers = updated;
         }
     }
 
@@ -37,8 +86,23 @@ public class SkinObservable {
      * @param observer The {@link SkinObserver} to remove. Ignored if null.
      */
     public void removeObserver(@Nullable SkinObserver observer) {
-        if (observer != null) {
-            mObservers.remove(observer);
+        if (observer == null) {
+            return;
+        }
+        synchronized (mLock) {
+            ObserverEntry[] current = mObservers;
+            int index = indexOf(current, observer);
+            if (index < 0) {
+                return;
+            }
+            if (current.length == 1) {
+                mObservers = EMPTY;
+                return;
+            }
+            ObserverEntry[] updated = new ObserverEntry[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            mObservers = updated;
         }
     }
 
@@ -46,6 +110,28 @@ public class SkinObservable {
         removeObserver(observer);
     }
 
+    /**
+     * Sets whether notifications are coalesced into one dispatch per frame on the main looper.
+     * When disabled, {@link #notifyUpdateSkin(Object)} dispatches synchronously on the calling thread.
+     *
+     * @param enable true to coalesce (default), false to dispatch immediately.
+     */
+    public void setCoalesceEnabled(boolean enable) {
+        mCoalesceEnabled = enable;
+    }
+
+    public boolean isCoalesceEnabled() {
+        return mCoalesceEnabled;
+    }
+
+    /**
+     * Sets the listener that receives exceptions thrown by observers. Without a listener they are logged.
+     *
+     * @param listener The listener, or null to restore logging.
+     */
+    public void setOnObserverErrorListener(@Nullable OnObserverErrorListener listener) {
+        mErrorListener = listener;
+    }
 
     /**
      * Notifies all registered observers of a skin update with no additional data.
@@ -55,24 +141,97 @@ public class SkinObservable {
     }
 
     /**
-     * Notifies all registered observers of a skin update with optional data.
-     * Notifications are delivered in reverse order of registration.
+     * Requests a notification of all registered observers with optional data. Requests made within
+     * the same frame are delivered once, on the main thread; if they carry different data, observers
+     * receive null, meaning a full update.
+     * <p>
+     * With coalescing enabled, the default, this is asynchronous: observers have not been updated
+     * yet when it returns, unlike in earlier versions. Callers that rely on the update being done,
+     * e.g. before calling their own listeners, use {@link #notifyUpdateSkinNow(Object)} or disable
+     * coalescing with {@link #setCoalesceEnabled(boolean)}.
      *
      * @param arg Optional data to pass to observers.
      */
     public void notifyUpdateSkin(@Nullable Object arg) {
-        // Create a snapshot to avoid ConcurrentModificationException
-        List<SkinObserver> snapshot;
-        synchronized (mObservers) {
-            snapshot = new ArrayList<>(mObservers);
+        if (!mCoalesceEnabled) {
+            dispatchUpdateSkin(arg);
+            return;
+        }
+        synchronized (mLock) {
+            if (mDispatchPending) {
+                mPendingArg = mergeArgs(mPendingArg, arg);
+                return;
+            }
+            mDispatchPending = true;
+            mPendingArg = arg;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            scheduleFrameDispatch();
+        } else {
+            mMainHandler.post(mScheduleRunnable);
         }
+    }
+
+    /**
+     * Notifies all registered observers immediately on the calling thread, flushing any
+     * notification that is still waiting for the next frame.
+     *
+     * @param arg Optional data to pass to observers.
+     */
+    public void notifyUpdateSkinNow(@Nullable Object arg) {
+        synchronized (mLock) {
+            if (mDispatchPending) {
+                arg = mergeArgs(mPendingArg, arg);
+                mDispatchPending = false;
+                mPendingArg = null;
+            }
+        }
+        dispatchUpdateSkin(arg);
+    }
 
-        // Notify observers in reverse order
-        for (int i = snapshot.size() - 1; i >= 0; i--) {
+    /**
+     * Combines the data of two coalesced notifications. Subclasses may override this to merge
+     * payloads; the default collapses differing data into null.
+     *
+     * @param pending The data of the notification already waiting for dispatch.
+     * @param arg     The data of the new notification.
+     * @return The data to deliver.
+     */
+    @Nullable
+    protected Object mergeArgs(@Nullable Object pending, @Nullable Object arg) {
+        return Objects.equals(pending, arg) ? pending : null;
+    }
+
+    private void scheduleFrameDispatch() {
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void dispatchPending() {
+        Object arg;
+        synchronized (mLock) {
+            if (!mDispatchPending) {
+                return;
+            }
+            arg = mPendingArg;
+            mDispatchPending = false;
+            mPendingArg = null;
+        }
+        dispatchUpdateSkin(arg);
+    }
+
+    private void dispatchUpdateSkin(@Nullable Object arg) {
+        ObserverEntry[] snapshot = mObservers;
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            SkinObserver observer = snapshot[i].observer;
             try {
-                snapshot.get(i).updateSkin(this, arg);
-            } catch (Exception e) {
-                // Suppress exceptions to prevent one observer from breaking the chain
+                observer.updateSkin(this, arg);
+            } catch (RuntimeException e) {
+                OnObserverErrorListener listener = mErrorListener;
+                if (listener != null) {
+                    listener.onObserverError(observer, e);
+                } else {
+                    Log.e(TAG, "Observer " + observer + " failed to update skin", e);
+                }
             }
         }
     }
@@ -85,7 +244,9 @@ public class SkinObservable {
      * Removes all observers from the list.
      */
     public void clearObservers() {
-        mObservers.clear();
+        synchronized (mLock) {
+            mObservers = EMPTY;
+        }
     }
 
     /**
@@ -94,6 +255,32 @@ public class SkinObservable {
      * @return The number of observers.
      */
     public int countObservers() {
-        return mObservers.size();
+        return mObservers.length;
+    }
+
+    private static int indexOf(ObserverEntry[] entries, SkinObserver observer) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].observer.equals(observer)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class ObserverEntry {
+        final SkinObserver observer;
+        final int priority;
+
+        ObserverEntry(SkinObserver observer, int priority) {
+            this.observer = observer;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Receives exceptions thrown by {@link SkinObserver#updateSkin(SkinObservable, Object)}.
+     */
+    public interface OnObserverErrorListener {
+        void onObserverError(@NonNull SkinObserver observer, @NonNull Throwable error);
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,45 @@
 package skin.support.utils;
 
 import android.media.ExifInterface;
+import android.os.Build;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class ImageUtils {
+    /**
+     * The EXIF block of a JPEG is an APP1 segment of at most 64KB, preceded at most by a JFIF
+     * APP0 segment of the same bound, so the orientation is always within the first 128KB.
+     */
+    private static final int EXIF_READ_LIMIT = 128 * 1024;
+
+    /**
+     * Reads the EXIF orientation of an image. Only the head of the file is read, not the pixels.
+     */
     public static int getImageRotateAngle(String filePath) {
         ExifInterface exif;
+        InputStream in = null;
         try {
-            exif = new ExifInterface(filePath);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                in = new BufferedInputStream(new LimitedInputStream(new FileInputStream(filePath), EXIF_READ_LIMIT));
+                exif = new ExifInterface(in);
+            } else {
+                exif = new ExifInterface(filePath);
+            }
         } catch (IOException e) {
             e.printStackTrace();
             exif = null;
 
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
         int angle = 0;
         if (exif != null) {
@@ -34,4 +61,57 @@ public class ImageUtils {
         }
         return angle;
     }
+
+    /**
+     * Ends the stream after {@code limit} bytes.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            mRemaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                mRemaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, mRemaining));
+            if (read > 0) {
+                mRemaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, mRemaining));
+            mRemaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), mRemaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
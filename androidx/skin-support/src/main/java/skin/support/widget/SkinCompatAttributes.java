@@ -0,0 +1,134 @@
+package skin.support.widget;
+
+import android.content.res.TypedArray;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+
+import skin.support.R;
+import skin.support.annotation.NonNull;
+import skin.support.annotation.Nullable;
+
+/**
+ * A compact record of every skin-relevant resource id declared on a view, captured with a single
+ * {@code obtainStyledAttributes} pass.
+ * <p>
+ * The helpers of a view (background, text, image, ...) each call {@link #obtain(View, AttributeSet, int)}
+ * from the view's constructor; only the first call walks the attribute set and theme, the others
+ * reuse the capture. The returned record is owned by the calling thread and is only valid until the
+ * next capture for another view, so helpers must copy the values they need instead of keeping it.
+ */
+public final class SkinCompatAttributes {
+    public static final int BACKGROUND = 0;
+    public static final int SRC = 1;
+    public static final int SRC_COMPAT = 2;
+    public static final int ANDROID_TINT = 3;
+    public static final int TINT = 4;
+    public static final int TEXT_APPEARANCE = 5;
+    public static final int TEXT_COLOR = 6;
+    public static final int TEXT_COLOR_HINT = 7;
+    public static final int DRAWABLE_LEFT = 8;
+    public static final int DRAWABLE_TOP = 9;
+    public static final int DRAWABLE_RIGHT = 10;
+    public static final int DRAWABLE_BOTTOM = 11;
+    public static final int DRAWABLE_START = 12;
+    public static final int DRAWABLE_END = 13;
+
+    private static final int[] STYLEABLE_INDEX = {
+            R.styleable.SkinViewAttributes_android_background,
+            R.styleable.SkinViewAttributes_android_src,
+            R.styleable.SkinViewAttributes_srcCompat,
+            R.styleable.SkinViewAttributes_android_tint,
+            R.styleable.SkinViewAttributes_tint,
+            R.styleable.SkinViewAttributes_android_textAppearance,
+            R.styleable.SkinViewAttributes_android_textColor,
+            R.styleable.SkinViewAttributes_android_textColorHint,
+            R.styleable.SkinViewAttributes_android_drawableLeft,
+            R.styleable.SkinViewAttributes_android_drawableTop,
+            R.styleable.SkinViewAttributes_android_drawableRight,
+            R.styleable.SkinViewAttributes_android_drawableBottom,
+            R.styleable.SkinViewAttributes_android_drawableStart,
+            R.styleable.SkinViewAttributes_android_drawableEnd,
+    };
+
+    private static final ThreadLocal<SkinCompatAttributes> sCurrent = new ThreadLocal<SkinCompatAttributes>() {
+        @Override
+        protected SkinCompatAttributes initialValue() {
+            return new SkinCompatAttributes();
+        }
+    };
+
+    private final int[] mResIds = new int[STYLEABLE_INDEX.length];
+    private int mPresentMask;
+
+    private WeakReference<View> mView;
+    private WeakReference<AttributeSet> mAttrs;
+    private int mDefStyleAttr;
+
+    private SkinCompatAttributes() {
+    }
+
+    /**
+     * Returns the skin attributes of the given view, capturing them if this is the first helper of
+     * the view to ask.
+     *
+     * @param view         The view under construction.
+     * @param attrs        The attributes passed to the view's constructor.
+     * @param defStyleAttr The default style attribute passed to the view's constructor.
+     */
+    @NonNull
+    public static SkinCompatAttributes obtain(@NonNull View view, @Nullable AttributeSet attrs, int defStyleAttr) {
+        SkinCompatAttributes record = sCurrent.get();
+        if (!record.isCaptureOf(view, attrs, defStyleAttr)) {
+            record.capture(view, attrs, defStyleAttr);
+        }
+        return record;
+    }
+
+    /**
+     * @param index One of the attribute constants of this class.
+     * @return Whether the view, its style or its theme declares the attribute.
+     */
+    public boolean hasValue(int index) {
+        return (mPresentMask & (1 << index)) != 0;
+    }
+
+    /**
+     * @param index One of the attribute constants of this class.
+     * @return The resource id behind the attribute, or {@link SkinCompatHelper#INVALID_ID}.
+     */
+    public int getResourceId(int index) {
+        return mResIds[index];
+    }
+
+    private boolean isCaptureOf(View view, AttributeSet attrs, int defStyleAttr) {
+        return mView != null && mView.get() == view
+                && (mAttrs == null ? attrs == null : mAttrs.get() == attrs)
+                && mDefStyleAttr == defStyleAttr;
+    }
+
+    private void capture(View view, AttributeSet attrs, int defStyleAttr) {
+        // Forget the previous view first, so a failed capture is never mistaken for it.
+        mView = null;
+        int presentMask = 0;
+        TypedArray a = view.getContext().obtainStyledAttributes(attrs, R.styleable.SkinViewAttributes, defStyleAttr, 0);
+        try {
+            for (int i = 0; i < STYLEABLE_INDEX.length; i++) {
+                int index = STYLEABLE_INDEX[i];
+                if (a.hasValue(index)) {
+                    presentMask |= 1 << i;
+                    mResIds[i] = a.getResourceId(index, SkinCompatHelper.INVALID_ID);
+                } else {
+                    mResIds[i] = SkinCompatHelper.INVALID_ID;
+                }
+            }
+        } finally {
+            a.recycle();
+        }
+        mPresentMask = presentMask;
+        mView = new WeakReference<>(view);
+        mAttrs = attrs == null ? null : new WeakReference<>(attrs);
+        mDefStyleAttr = defStyleAttr;
+    }
+}
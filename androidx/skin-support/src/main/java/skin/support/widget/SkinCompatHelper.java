@@ -1,5 +1,10 @@
 package skin.support.widget;
 
+import android.content.res.ColorStateList;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+
+import skin.support.SkinCompatManager;
 
 /**
  * Created by ximsfei on 2017/1/13.
@@ -8,11 +13,54 @@ package skin.support.widget;
 public abstract class SkinCompatHelper {
     protected static final String SYSTEM_ID_PREFIX = "1";
     public static final int INVALID_ID = 0;
+    /**
+     * Generation recorded by helpers that have not applied anything yet.
+     */
+    protected static final int INVALID_GENERATION = -1;
 
     static public int checkResourceId(int resId) {
         String hexResId = Integer.toHexString(resId);
         return hexResId.startsWith(SYSTEM_ID_PREFIX) ? INVALID_ID : resId;
     }
 
+    /**
+     * @return The current {@link SkinCompatManager#getSkinGeneration() skin generation}.
+     */
+    protected static int currentSkinGeneration() {
+        return SkinCompatManager.getInstance().getSkinGeneration();
+    }
+
+    /**
+     * Checks whether two resolved drawables render the same content, so that setting one in place
+     * of the other would be a no-op.
+     */
+    protected static boolean isSameDrawable(Drawable a, Drawable b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof ColorDrawable && b instanceof ColorDrawable) {
+            return ((ColorDrawable) a).getColor() == ((ColorDrawable) b).getColor();
+        }
+        Drawable.ConstantState state = a.getConstantState();
+        return state != null && state == b.getConstantState();
+    }
+
+    /**
+     * Checks whether two resolved color state lists are interchangeable. Stateful lists are only
+     * considered equal when they are the same instance.
+     */
+    protected static boolean isSameColor(ColorStateList a, ColorStateList b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        return !a.isStateful() && !b.isStateful() && a.getDefaultColor() == b.getDefaultColor();
+    }
+
     abstract public void applySkin();
 }
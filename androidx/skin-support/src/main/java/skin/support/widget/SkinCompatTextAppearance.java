@@ -0,0 +1,114 @@
+package skin.support.widget;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.util.SparseArray;
+
+import java.util.WeakHashMap;
+
+import skin.support.R;
+import skin.support.annotation.NonNull;
+
+/**
+ * The skin-relevant color resource ids behind a {@code textAppearance} style.
+ * <p>
+ * Every view using a given text appearance resolves the same resource ids, so the style is parsed
+ * once per theme and the result is shared. Attribute references inside the style resolve against
+ * the theme, which is why the theme is part of the key; themes are held weakly.
+ */
+public final class SkinCompatTextAppearance {
+    private static final SkinCompatTextAppearance NONE =
+            new SkinCompatTextAppearance(false, SkinCompatHelper.INVALID_ID, false, SkinCompatHelper.INVALID_ID);
+
+    private static final WeakHashMap<Resources.Theme, SparseArray<SkinCompatTextAppearance>> sCache =
+            new WeakHashMap<>();
+
+    private final boolean mHasTextColor;
+    private final int mTextColorResId;
+    private final boolean mHasTextColorHint;
+    private final int mTextColorHintResId;
+
+    private SkinCompatTextAppearance(boolean hasTextColor, int textColorResId,
+                                     boolean hasTextColorHint, int textColorHintResId) {
+        mHasTextColor = hasTextColor;
+        mTextColorResId = textColorResId;
+        mHasTextColorHint = hasTextColorHint;
+        mTextColorHintResId = textColorHintResId;
+    }
+
+    /**
+     * Returns the colors declared by a text appearance style, parsing the style on first use.
+     *
+     * @param context The context whose theme the style is resolved against.
+     * @param resId   The text appearance style resource id.
+     */
+    @NonNull
+    public static SkinCompatTextAppearance obtain(@NonNull Context context, int resId) {
+        if (resId == SkinCompatHelper.INVALID_ID) {
+            return NONE;
+        }
+        Resources.Theme theme = context.getTheme();
+        synchronized (sCache) {
+            SparseArray<SkinCompatTextAppearance> byStyle = sCache.get(theme);
+            SkinCompatTextAppearance appearance = byStyle != null ? byStyle.get(resId) : null;
+            if (appearance != null) {
+                return appearance;
+            }
+        }
+        SkinCompatTextAppearance appearance = parse(context, resId);
+        synchronized (sCache) {
+            SparseArray<SkinCompatTextAppearance> byStyle = sCache.get(theme);
+            if (byStyle == null) {
+                byStyle = new SparseArray<>();
+                sCache.put(theme, byStyle);
+            }
+            byStyle.put(resId, appearance);
+        }
+        return appearance;
+    }
+
+    /**
+     * Drops every cached text appearance, e.g. after a theme was modified in place.
+     */
+    public static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+        }
+    }
+
+    @NonNull
+    private static SkinCompatTextAppearance parse(@NonNull Context context, int resId) {
+        TypedArray a = context.obtainStyledAttributes(resId, R.styleable.SkinTextAppearance);
+        try {
+            boolean hasTextColor = a.hasValue(R.styleable.SkinTextAppearance_android_textColor);
+            boolean hasTextColorHint = a.hasValue(R.styleable.SkinTextAppearance_android_textColorHint);
+            if (!hasTextColor && !hasTextColorHint) {
+                return NONE;
+            }
+            return new SkinCompatTextAppearance(
+                    hasTextColor,
+                    a.getResourceId(R.styleable.SkinTextAppearance_android_textColor, SkinCompatHelper.INVALID_ID),
+                    hasTextColorHint,
+                    a.getResourceId(R.styleable.SkinTextAppearance_android_textColorHint, SkinCompatHelper.INVALID_ID));
+        } finally {
+            a.recycle();
+        }
+    }
+
+    public boolean hasTextColor() {
+        return mHasTextColor;
+    }
+
+    public int getTextColorResId() {
+        return mTextColorResId;
+    }
+
+    public boolean hasTextColorHint() {
+        return mHasTextColorHint;
+    }
+
+    public int getTextColorHintResId() {
+        return mTextColorHintResId;
+    }
+}
@@ -0,0 +1,187 @@
+package skin.support.app;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import skin.support.SkinCompatManager;
+import skin.support.annotation.NonNull;
+import skin.support.widget.SkinCompatSupportable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SkinViewPoolTest {
+    private static final int LAYOUT = android.R.layout.simple_list_item_1;
+    private static final long TIMEOUT_MS = 5000;
+
+    private static boolean sInflaterAdded;
+    private static volatile CountDownLatch sBackgroundEntered;
+    private static volatile CountDownLatch sBackgroundGate;
+
+    private SkinViewPool mPool;
+
+    @Before
+    public void setUp() {
+        Application application = RuntimeEnvironment.getApplication();
+        SkinCompatManager manager = SkinCompatManager.init(application);
+        if (!sInflaterAdded) {
+            manager.addInflater(new CountingInflater());
+            sInflaterAdded = true;
+        }
+        sBackgroundEntered = null;
+        sBackgroundGate = null;
+        mPool = new SkinViewPool(application);
+    }
+
+    @After
+    public void tearDown() {
+        CountDownLatch gate = sBackgroundGate;
+        if (gate != null) {
+            gate.countDown();
+        }
+        mPool.release();
+    }
+
+    @Test
+    public void prefetchInflatesInBackground() {
+        mPool.prefetch(LAYOUT, 2, null);
+        awaitPooledCount(2);
+
+        View view = mPool.acquire(LAYOUT, null);
+        assertTrue(view instanceof CountingTextView);
+        assertEquals(0, ((CountingTextView) view).applyCount);
+        // The pool is topped up again.
+        awaitPooledCount(2);
+    }
+
+    @Test
+    public void acquireInflatesOnDemandWhenEmpty() {
+        View view = mPool.acquire(LAYOUT, null);
+        assertTrue(view instanceof CountingTextView);
+        assertEquals(0, mPool.getPooledCount(LAYOUT));
+    }
+
+    @Test
+    public void acquireReskinsViewsPooledBeforeSkinSwitch() {
+        mPool.prefetch(LAYOUT, 1, null);
+        awaitPooledCount(1);
+
+        SkinCompatManager.getInstance().nextSkinGeneration();
+        View stale = mPool.acquire(LAYOUT, null);
+        assertEquals(1, ((CountingTextView) stale).applyCount);
+
+        awaitPooledCount(1);
+        View fresh = mPool.acquire(LAYOUT, null);
+        assertNotSame(stale, fresh);
+        assertEquals(0, ((CountingTextView) fresh).applyCount);
+    }
+
+    @Test
+    public void acquireDoesNotWaitForBackgroundInflation() throws InterruptedException {
+        sBackgroundEntered = new CountDownLatch(1);
+        sBackgroundGate = new CountDownLatch(1);
+        mPool.prefetch(LAYOUT, 1, null);
+        assertTrue(sBackgroundEntered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        // The background thread is blocked in the middle of an inflation.
+        long start = SystemClock.uptimeMillis();
+        View view = mPool.acquire(LAYOUT, null);
+        long elapsed = SystemClock.uptimeMillis() - start;
+        assertTrue(view instanceof CountingTextView);
+        assertTrue("acquire() waited " + elapsed + "ms", elapsed < TIMEOUT_MS / 2);
+
+        sBackgroundGate.countDown();
+        awaitPooledCount(1);
+    }
+
+    @Test
+    public void releaseDropsPooledViewsAndStopsPrefetching() {
+        mPool.prefetch(LAYOUT, 2, null);
+        awaitPooledCount(2);
+
+        mPool.release();
+        assertEquals(0, mPool.getPooledCount(LAYOUT));
+        mPool.prefetch(LAYOUT, 2, null);
+        assertEquals(0, mPool.getPooledCount(LAYOUT));
+
+        // Still usable as a plain inflater.
+        View view = mPool.acquire(LAYOUT, null);
+        assertSame(CountingTextView.class, view.getClass());
+        assertEquals(0, mPool.getPooledCount(LAYOUT));
+    }
+
+    private void awaitPooledCount(int count) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mPool.getPooledCount(LAYOUT) < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Pool did not reach " + count
+                        + " views, has " + mPool.getPooledCount(LAYOUT));
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    public static class CountingTextView extends TextView implements SkinCompatSupportable {
+        int applyCount;
+
+        public CountingTextView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        @Override
+        public void applySkin() {
+            applyCount++;
+        }
+    }
+
+    private static final class CountingInflater implements SkinTagLayoutInflater {
+        private static final String[] TAGS = {"TextView"};
+
+        @NonNull
+        @Override
+        public String[] getSupportedTags() {
+            return TAGS;
+        }
+
+        @Override
+        public View createView(@NonNull Context context, String name, @NonNull AttributeSet attrs) {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                CountDownLatch entered = sBackgroundEntered;
+                CountDownLatch gate = sBackgroundGate;
+                if (entered != null) {
+                    entered.countDown();
+                }
+                if (gate != null) {
+                    try {
+                        gate.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            return new CountingTextView(context, attrs);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package skin.support.content.res;
+
+import android.content.res.ColorStateList;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import skin.support.SkinCompatManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class SkinCompatUserThemeManagerTest {
+    // Framework colors, so the test needs no resources of its own. Their entry names are
+    // "black", "white", "darker_gray" and "holo_blue_dark".
+    private static final int BLACK = android.R.color.black;
+    private static final int WHITE = android.R.color.white;
+    private static final int GRAY = android.R.color.darker_gray;
+    private static final int BLUE = android.R.color.holo_blue_dark;
+
+    private static final int[] PRESSED = {android.R.attr.state_pressed};
+
+    private SkinCompatUserThemeManager mManager;
+
+    @Before
+    public void setUp() {
+        SkinCompatManager.init(RuntimeEnvironment.getApplication());
+        mManager = SkinCompatUserThemeManager.get();
+        mManager.clearColors();
+        mManager.clearDrawables();
+    }
+
+    @Test
+    public void resolvesReferenceChains() {
+        mManager.addColorState(BLACK, "#ff000000");
+        mManager.addColorState(WHITE, referring("black"));
+        mManager.addColorState(GRAY, referring("white"));
+
+        assertEquals(0xff000000, defaultColor(GRAY));
+        assertEquals(0xff00ff00, mManager.getColorStateList(GRAY).getColorForState(PRESSED, 0));
+    }
+
+    @Test
+    public void recompilesDependentsOfEditedColor() {
+        mManager.addColorState(BLACK, "#ff000000");
+        mManager.addColorState(WHITE, referring("black"));
+        mManager.addColorState(GRAY, referring("white"));
+        // Cached before the edit.
+        assertEquals(0xff000000, defaultColor(GRAY));
+
+        mManager.addColorState(BLACK, "#ffff0000");
+        assertEquals(0xffff0000, defaultColor(WHITE));
+        assertEquals(0xffff0000, defaultColor(GRAY));
+
+        mManager.addColorState(WHITE, "#ff0000ff");
+        assertEquals(0xffff0000, defaultColor(BLACK));
+        assertEquals(0xff0000ff, defaultColor(GRAY));
+    }
+
+    @Test
+    public void compilesBatchRegardlessOfOrder() {
+        // Dependents come before the colors they refer to.
+        mManager.edit()
+                .addColorState(GRAY, referring("white"))
+                .addColorState(WHITE, referring("black"))
+                .addColorState(BLACK, "#ff123456")
+                .commit();
+
+        assertEquals(0xff123456, defaultColor(WHITE));
+        assertEquals(0xff123456, defaultColor(GRAY));
+    }
+
+    @Test
+    public void survivesReferenceCycles() {
+        mManager.edit()
+                .addColorState(WHITE, referring("darker_gray"))
+                .addColorState(GRAY, referring("white"))
+                .addColorState(BLUE, referring("holo_blue_dark"))
+                .commit();
+
+        // Colors in a cycle keep their literal states and have no default to resolve.
+        assertEquals(0xff00ff00, mManager.getColorStateList(WHITE).getColorForState(PRESSED, 0));
+        assertEquals(0xff00ff00, mManager.getColorStateList(GRAY).getColorForState(PRESSED, 0));
+        assertEquals(0xff00ff00, mManager.getColorStateList(BLUE).getColorForState(PRESSED, 0));
+
+        // Breaking the cycle resolves the rest of it.
+        mManager.addColorState(GRAY, "#ff0000ff");
+        assertEquals(0xff0000ff, defaultColor(WHITE));
+        assertEquals(0xff0000ff, defaultColor(GRAY));
+    }
+
+    @Test
+    public void removedReferenceLeavesDependentUnresolved() {
+        mManager.addColorState(BLACK, "#ff000000");
+        mManager.addColorState(WHITE, referring("black"));
+        assertEquals(0xff000000, defaultColor(WHITE));
+
+        mManager.removeColorState(BLACK);
+        assertNull(mManager.getColorState(BLACK));
+        ColorStateList white = mManager.getColorStateList(WHITE);
+        assertEquals(0xff00ff00, white.getColorForState(PRESSED, 0));
+        assertEquals(0x12345678, white.getColorForState(new int[0], 0x12345678));
+
+        mManager.addColorState(BLACK, "#ff00ffff");
+        assertEquals(0xff00ffff, defaultColor(WHITE));
+    }
+
+    @Test
+    public void loadsLegacyJson() throws JSONException {
+        String json = "["
+                + "{\"type\":\"color\",\"colorName\":\"colorPrimary\",\"colorDefault\":\"#ffff0000\","
+                + "\"onlyDefaultColor\":true},"
+                + "{\"type\":\"color\",\"colorName\":\"colorAccent\",\"colorDefault\":\"colorPrimary\","
+                + "\"colorPressed\":\"#ff00ff00\",\"onlyDefaultColor\":false},"
+                + "{\"type\":\"drawable\",\"drawableName\":\"windowBackground\","
+                + "\"drawablePathAndAngle\":\"/sdcard/my:image.png:90\"},"
+                + "{\"type\":\"drawable\",\"drawableName\":\"icon\",\"drawablePathAndAngle\":\"/sdcard/icon.png\"}"
+                + "]";
+        HashMap<String, ColorState> colors = new HashMap<>();
+        HashMap<String, DrawableOverride> drawables = new HashMap<>();
+        SkinCompatUserThemeManager.startLoadFromJson(json, colors, drawables);
+
+        assertEquals("#ffff0000", colors.get("colorPrimary").colorDefault);
+        ColorState accent = colors.get("colorAccent");
+        assertNotNull(accent);
+        assertEquals("colorPrimary", accent.colorDefault);
+        assertEquals("#ff00ff00", accent.colorPressed);
+        assertEquals(Collections.singletonList("colorPrimary"), accent.getReferences());
+
+        assertEquals("/sdcard/my:image.png", drawables.get("windowBackground").path);
+        assertEquals(90, drawables.get("windowBackground").angle);
+        assertEquals("/sdcard/icon.png", drawables.get("icon").path);
+        assertEquals(0, drawables.get("icon").angle);
+    }
+
+    /**
+     * A color that is green when pressed and refers to another user color otherwise.
+     */
+    private static ColorState referring(String colorName) {
+        return new ColorState(null, null, null, null, "#ff00ff00", null, null, null,
+                null, null, null, colorName);
+    }
+
+    private int defaultColor(int colorRes) {
+        return mManager.getColorStateList(colorRes).getDefaultColor();
+    }
+}
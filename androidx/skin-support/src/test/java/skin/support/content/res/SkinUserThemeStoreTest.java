@@ -0,0 +1,309 @@
+package skin.support.content.res;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SkinUserThemeStoreTest {
+    private static final int MAGIC = 0x534b5554;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_RANGE = 8;
+    private static final int OFFSET_RECORD_COUNT = 16;
+    private static final int HEADER_SIZE = 20;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private SkinUserThemeStore mStore;
+    private final Map<String, ColorState> mColors = new HashMap<>();
+    private final Map<String, DrawableOverride> mDrawables = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "user_theme/theme.bin");
+        mStore = new SkinUserThemeStore(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        assertFalse(mStore.exists());
+        // Refers to colorPrimary by default.
+        ColorState pressed = new ColorState(null, null, null, null, "#ff00ff00", null, null, null,
+                null, null, null, "colorPrimary");
+        pressed.colorName = "colorAccent";
+        DrawableOverride override = new DrawableOverride("windowBackground", "/sdcard/a:b.jpg", 90,
+                1234L, 5678L, 640, 480);
+        mStore.append(Arrays.asList(
+                SkinUserThemeStore.Record.putColor(new ColorState("colorPrimary", "#ffff0000")),
+                SkinUserThemeStore.Record.putColor(pressed),
+                SkinUserThemeStore.Record.putDrawable(override)));
+
+        assertTrue(mStore.exists());
+        reload();
+        assertEquals(2, mColors.size());
+        assertEquals("#ffff0000", mColors.get("colorPrimary").colorDefault);
+        assertTrue(mColors.get("colorPrimary").isOnlyDefaultColor());
+        ColorState loaded = mColors.get("colorAccent");
+        assertFalse(loaded.isOnlyDefaultColor());
+        assertEquals("#ff00ff00", loaded.colorPressed);
+        assertEquals("colorPrimary", loaded.colorDefault);
+        assertNull(loaded.colorSelected);
+
+        DrawableOverride loadedOverride = mDrawables.get("windowBackground");
+        assertEquals("/sdcard/a:b.jpg", loadedOverride.path);
+        assertEquals(90, loadedOverride.angle);
+        assertEquals(1234L, loadedOverride.fileSize);
+        assertEquals(5678L, loadedOverride.lastModified);
+        assertEquals(640, loadedOverride.width);
+        assertEquals(480, loadedOverride.height);
+    }
+
+    @Test
+    public void replaysRecordsInOrder() throws IOException {
+        mStore.append(Arrays.asList(
+                SkinUserThemeStore.Record.putColor(new ColorState("a", "#ff000001")),
+                SkinUserThemeStore.Record.putColor(new ColorState("b", "#ff000002")),
+                SkinUserThemeStore.Record.putDrawable(drawable("d"))));
+        mStore.append(Arrays.asList(
+                SkinUserThemeStore.Record.removeColor("a"),
+                SkinUserThemeStore.Record.putColor(new ColorState("b", "#ff000003")),
+                SkinUserThemeStore.Record.clearDrawables(),
+                SkinUserThemeStore.Record.putDrawable(drawable("e"))));
+
+        reload();
+        assertEquals(Collections.singleton("b"), mColors.keySet());
+        assertEquals("#ff000003", mColors.get("b").colorDefault);
+        assertEquals(Collections.singleton("e"), mDrawables.keySet());
+        assertEquals(7, mStore.getRecordCount());
+
+        mStore.append(Collections.singletonList(SkinUserThemeStore.Record.clearColors()));
+        reload();
+        assertTrue(mColors.isEmpty());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() throws IOException {
+        List<SkinUserThemeStore.Record> records = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            records.add(SkinUserThemeStore.Record.putColor(new ColorState("color" + i, "#ff000000")));
+        }
+        mStore.append(records);
+
+        reload();
+        assertEquals(2000, mColors.size());
+        assertTrue(mFile.length() > 16 * 1024);
+    }
+
+    @Test
+    public void compactKeepsOnlyLiveEntries() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            mStore.append(Collections.singletonList(SkinUserThemeStore.Record.putColor(
+                    new ColorState("colorPrimary", String.format("#ff0000%02x", i)))));
+        }
+        mStore.append(Arrays.asList(
+                SkinUserThemeStore.Record.putDrawable(drawable("d")),
+                SkinUserThemeStore.Record.putColor(new ColorState("colorAccent", "#ff123456")),
+                SkinUserThemeStore.Record.removeColor("colorAccent")));
+        assertEquals(103, mStore.getRecordCount());
+
+        mStore.compact();
+        assertEquals(2, mStore.getRecordCount());
+        reload();
+        assertEquals(Collections.singleton("colorPrimary"), mColors.keySet());
+        assertEquals("#ff000063", mColors.get("colorPrimary").colorDefault);
+        assertEquals(Collections.singleton("d"), mDrawables.keySet());
+
+        // The next snapshot fits in front of the current log; appends still land behind it.
+        mStore.compact(mColors, mDrawables);
+        mStore.append(Collections.singletonList(
+                SkinUserThemeStore.Record.putColor(new ColorState("colorAccent", "#ff654321"))));
+        reload();
+        assertEquals(2, mColors.size());
+        assertEquals("#ff654321", mColors.get("colorAccent").colorDefault);
+        assertEquals(3, mStore.getRecordCount());
+    }
+
+    @Test
+    public void stopsAtTornTail() throws IOException {
+        mStore.append(Collections.singletonList(
+                SkinUserThemeStore.Record.putColor(new ColorState("colorPrimary", "#ffff0000"))));
+        mStore.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(OFFSET_RANGE);
+            long range = file.readLong();
+            int end = (int) range;
+            // A record whose length was written but whose body was not.
+            file.seek(end);
+            file.writeInt(100);
+            file.writeByte(SkinUserThemeStore.OP_PUT_COLOR);
+            file.seek(OFFSET_RANGE);
+            file.writeLong((range & 0xffffffff00000000L) | (end + 5));
+        }
+
+        reload();
+        assertEquals(1, mColors.size());
+        assertEquals("#ffff0000", mColors.get("colorPrimary").colorDefault);
+    }
+
+    @Test
+    public void skipsMalformedRecords() throws IOException {
+        writeRawLog(2,
+                encode(SkinUserThemeStore.OP_PUT_DRAWABLE, "d", "/sdcard/d.png", "notAnAngle", "1", "2", "3", "4"),
+                encode(SkinUserThemeStore.OP_PUT_COLOR, "bad", "notAColor"),
+                encode((byte) 99, "from", "a", "newer", "version"),
+                encode(SkinUserThemeStore.OP_PUT_COLOR, "good", "#ff00ff00"));
+
+        reload();
+        assertTrue(mDrawables.isEmpty());
+        assertEquals(Collections.singleton("good"), mColors.keySet());
+    }
+
+    @Test
+    public void readsVersion1DrawableRecords() throws IOException {
+        File image = mFolder.newFile("image.png");
+        writeRawLog(1,
+                encode(SkinUserThemeStore.OP_PUT_DRAWABLE, "windowBackground", image.getPath() + ":270"),
+                encode(SkinUserThemeStore.OP_PUT_COLOR, "colorPrimary", "#ffff0000"));
+
+        reload();
+        DrawableOverride override = mDrawables.get("windowBackground");
+        assertNotNull(override);
+        assertEquals(image.getPath(), override.path);
+        assertEquals(270, override.angle);
+        long lastModified = image.lastModified();
+        assertEquals(lastModified, override.lastModified);
+        assertEquals(1, mColors.size());
+        assertEquals(2, mStore.getRecordCount());
+
+        // The records were rewritten in the current layout, so the file is not checked again.
+        assertTrue(image.delete());
+        reload();
+        assertEquals(lastModified, mDrawables.get("windowBackground").lastModified);
+        assertEquals(270, mDrawables.get("windowBackground").angle);
+
+        mStore.append(Collections.singletonList(SkinUserThemeStore.Record.putDrawable(drawable("d"))));
+        reload();
+        assertEquals(2, mDrawables.size());
+        assertEquals(3, mStore.getRecordCount());
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            file.seek(OFFSET_VERSION);
+            assertEquals(2, file.readInt());
+        }
+    }
+
+    @Test
+    public void keepsFilesOfNewerVersions() throws IOException {
+        writeRawLog(3,
+                encode(SkinUserThemeStore.OP_PUT_COLOR, "colorPrimary", "#ffff0000"),
+                encode((byte) 99, "from", "a", "newer", "version"));
+
+        reload();
+        assertEquals(Collections.singleton("colorPrimary"), mColors.keySet());
+
+        // Neither edits nor compaction may drop what the newer version wrote.
+        mStore.append(Collections.singletonList(
+                SkinUserThemeStore.Record.putColor(new ColorState("colorAccent", "#ff00ff00"))));
+        mStore.compact();
+        reload();
+        assertEquals(Collections.singleton("colorPrimary"), mColors.keySet());
+        assertEquals(2, mStore.getRecordCount());
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            file.seek(OFFSET_VERSION);
+            assertEquals(3, file.readInt());
+        }
+    }
+
+    @Test
+    public void resetsForeignFiles() throws IOException {
+        assertTrue(mFile.getParentFile().mkdirs());
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.write("[{\"type\":\"color\"}]".getBytes(StandardCharsets.UTF_8));
+        }
+
+        reload();
+        assertTrue(mColors.isEmpty());
+        mStore.append(Collections.singletonList(
+                SkinUserThemeStore.Record.putColor(new ColorState("colorPrimary", "#ffff0000"))));
+        reload();
+        assertEquals(1, mColors.size());
+    }
+
+    private void reload() throws IOException {
+        mColors.clear();
+        mDrawables.clear();
+        mStore.load(mColors, mDrawables);
+    }
+
+    private static DrawableOverride drawable(String name) {
+        return new DrawableOverride(name, "/sdcard/" + name + ".png", 0, 1L, 2L, 3, 4);
+    }
+
+    /**
+     * Writes a log the way the given store version did, bypassing {@link SkinUserThemeStore}.
+     */
+    private void writeRawLog(int version, byte[]... records) throws IOException {
+        assertTrue(mFile.getParentFile().mkdirs());
+        int end = HEADER_SIZE;
+        for (byte[] record : records) {
+            end += record.length;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.writeInt(MAGIC);
+            file.writeInt(version);
+            file.seek(OFFSET_RANGE);
+            file.writeLong(((long) HEADER_SIZE << 32) | end);
+            file.seek(OFFSET_RECORD_COUNT);
+            file.writeInt(records.length);
+            for (byte[] record : records) {
+                file.write(record);
+            }
+        }
+    }
+
+    private static byte[] encode(byte op, String... fields) {
+        int length = 2;
+        for (String field : fields) {
+            length += 2 + field.getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.put(op);
+        buffer.put((byte) fields.length);
+        for (String field : fields) {
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+        return buffer.array();
+    }
+}
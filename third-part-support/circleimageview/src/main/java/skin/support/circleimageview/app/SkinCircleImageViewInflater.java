@@ -4,14 +4,23 @@ import android.content.Context;
 import android.util.AttributeSet;
 import android.view.View;
 
-import skin.support.app.SkinLayoutInflater;
+import skin.support.annotation.NonNull;
+import skin.support.app.SkinTagLayoutInflater;
 import skin.support.circleimageview.widget.SkinCompatCircleImageView;
 
 /**
  * Created by ximsfei on 2017/3/5.
  */
 
-public class SkinCircleImageViewInflater implements SkinLayoutInflater {
+public class SkinCircleImageViewInflater implements SkinTagLayoutInflater {
+    private static final String[] SUPPORTED_TAGS = {"de.hdodenhof.circleimageview.CircleImageView"};
+
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
+
     @Override
     public View createView(Context context, final String name, AttributeSet attrs) {
         View view = null;
@@ -5,7 +5,7 @@ import androidx.annotation.NonNull;
 import android.util.AttributeSet;
 import android.view.View;
 
-import skin.support.app.SkinLayoutInflater;
+import skin.support.app.SkinTagLayoutInflater;
 import skin.support.flycotablayout.widget.SkinCommonTabLayout;
 import skin.support.flycotablayout.widget.SkinMsgView;
 import skin.support.flycotablayout.widget.SkinSegmentTabLayout;
@@ -15,7 +15,20 @@ import skin.support.flycotablayout.widget.SkinSlidingTabLayout;
  * Created by ximsf on 2017/3/8.
  */
 
-public class SkinFlycoTabLayoutInflater implements SkinLayoutInflater {
+public class SkinFlycoTabLayoutInflater implements SkinTagLayoutInflater {
+    private static final String[] SUPPORTED_TAGS = {
+            "com.flyco.tablayout.SlidingTabLayout",
+            "com.flyco.tablayout.CommonTabLayout",
+            "com.flyco.tablayout.SegmentTabLayout",
+            "com.flyco.tablayout.widget.MsgView"
+    };
+
+    @NonNull
+    @Override
+    public String[] getSupportedTags() {
+        return SUPPORTED_TAGS;
+    }
+
     @Override
     public View createView(@NonNull Context context, String name, @NonNull AttributeSet attrs) {
         View view = null;
@@ -4,4 +4,6 @@ androidx:skin-support:bintrayUpload --stacktrace \
 androidx:skin-support-appcompat:bintrayUpload --stacktrace \
 androidx:skin-support-design:bintrayUpload --stacktrace \
 androidx:skin-support-cardview:bintrayUpload --stacktrace \
+androidx:skin-support-recyclerview:bintrayUpload --stacktrace \
+androidx:skin-support-compiler:bintrayUpload --stacktrace \
 androidx:skin-support-constraint-layout:bintrayUpload --stacktrace